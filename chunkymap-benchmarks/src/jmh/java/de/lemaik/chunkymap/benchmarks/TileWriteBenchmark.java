@@ -0,0 +1,56 @@
+package de.lemaik.chunkymap.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import org.dynmap.storage.MapStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Hashing a rendered tile and encoding it as PNG, which is what Dynmap does when the tile is
+ * written.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TileWriteBenchmark {
+
+  private BufferedImage image;
+  private int[] data;
+
+  @Setup
+  public void setUp() {
+    image = new BufferedImage(128, 128, BufferedImage.TYPE_INT_ARGB);
+    data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    Random random = new Random(42);
+    for (int i = 0; i < data.length; i++) {
+      // smooth gradients with some noise, like a rendered tile
+      int x = i % 128;
+      int y = i / 128;
+      data[i] = 0xFF000000 | (x + random.nextInt(8)) << 16 | (y + random.nextInt(8)) << 8
+          | random.nextInt(32);
+    }
+  }
+
+  @Benchmark
+  public long hash() {
+    return MapStorage.calculateImageHashCode(data, 0, data.length);
+  }
+
+  @Benchmark
+  public byte[] encodePng() throws IOException {
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", png);
+    return png.toByteArray();
+  }
+}
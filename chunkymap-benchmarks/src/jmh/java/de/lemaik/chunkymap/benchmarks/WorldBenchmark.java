@@ -0,0 +1,23 @@
+package de.lemaik.chunkymap.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import se.llbit.chunky.world.World;
+import se.llbit.chunky.world.World.LoggedWarnings;
+
+/**
+ * Opening a world with Chunky, which ChunkyMap does whenever the world changed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WorldBenchmark {
+
+  @Benchmark
+  public World openWorld(WorldState world) {
+    return World.loadWorld(world.getWorldFolder(), World.OVERWORLD_DIMENSION,
+        LoggedWarnings.SILENT);
+  }
+}
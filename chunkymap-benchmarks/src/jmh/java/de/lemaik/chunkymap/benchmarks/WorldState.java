@@ -0,0 +1,70 @@
+package de.lemaik.chunkymap.benchmarks;
+
+import de.lemaik.chunkymap.Platform;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import se.llbit.chunky.world.ChunkPosition;
+
+/**
+ * A {@link SyntheticWorld} that is generated once per benchmark run.
+ */
+@State(Scope.Benchmark)
+public class WorldState {
+
+  /**
+   * Size of the world in chunks along both axes.
+   */
+  @Param("16")
+  public int worldSize;
+
+  public File folder;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    folder = Files.createTempDirectory("chunkymap-benchmark").toFile();
+    SyntheticWorld.generate(new File(folder, "world"), worldSize);
+    Platform.setInstance(new BenchmarkPlatform(folder));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    deleteRecursively(folder);
+  }
+
+  public File getWorldFolder() {
+    return new File(folder, "world");
+  }
+
+  /**
+   * @return all chunks of the world
+   */
+  public Collection<ChunkPosition> getChunks() {
+    List<ChunkPosition> chunks = new ArrayList<>(worldSize * worldSize);
+    for (int x = 0; x < worldSize; x++) {
+      for (int z = 0; z < worldSize; z++) {
+        chunks.add(ChunkPosition.get(x, z));
+      }
+    }
+    return chunks;
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,46 @@
+package de.lemaik.chunkymap.dynmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.dynmap.DynmapChunk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import se.llbit.chunky.world.ChunkPosition;
+
+/**
+ * Building the set of padded chunks of a tile. The required chunks are a diagonal band like the
+ * chunks that an isometric perspective returns for a tile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PaddedChunksBenchmark {
+
+  @Param({"0", "1", "2"})
+  public int padding;
+
+  private List<DynmapChunk> requiredChunks;
+
+  @Setup
+  public void setUp() {
+    requiredChunks = new ArrayList<>();
+    for (int i = 0; i < 24; i++) {
+      for (int j = 0; j < 3; j++) {
+        requiredChunks.add(new DynmapChunk(i + j, i - j));
+      }
+    }
+  }
+
+  @Benchmark
+  public Set<ChunkPosition> paddedChunks() {
+    return ChunkyMapTile.getPaddedChunks(requiredChunks, padding);
+  }
+}
@@ -0,0 +1,135 @@
+package de.lemaik.chunkymap.rendering.local;
+
+import de.lemaik.chunkymap.benchmarks.WorldState;
+import de.lemaik.chunkymap.rendering.FileBufferRenderContext;
+import de.lemaik.chunkymap.rendering.ImageBufferPool;
+import de.lemaik.chunkymap.rendering.SilentTaskTracker;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import se.llbit.chunky.renderer.projection.ProjectionMode;
+import se.llbit.chunky.renderer.scene.Camera;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.chunky.world.ChunkPosition;
+import se.llbit.chunky.world.World;
+import se.llbit.chunky.world.World.LoggedWarnings;
+import se.llbit.math.Vector3;
+
+/**
+ * The stages of rendering a tile locally: loading the chunks into a PACKED octree, path tracing
+ * at a fixed SPP (including {@link ChunkyRenderer#getImage(Scene)}), the post-processing in
+ * {@link ChunkyRenderer#getImage(Scene)} on its own and denoising.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RenderBenchmark {
+
+  private static final int TILE_SIZE = 128;
+
+  @Param("16")
+  public int spp;
+
+  @Param("2")
+  public int threads;
+
+  private World world;
+  private Collection<ChunkPosition> chunks;
+  private int worldSize;
+  private FileBufferRenderContext context;
+  private ChunkyRenderer renderer;
+  private Scene loadedScene;
+  private Scene imageScene;
+  private Oidn4jDenoiser denoiser;
+  private float[] beauty;
+  private float[] albedo;
+  private float[] normal;
+
+  @Setup(Level.Trial)
+  public void setUp(WorldState worldState) {
+    worldSize = worldState.worldSize;
+    world = World.loadWorld(worldState.getWorldFolder(), World.OVERWORLD_DIMENSION,
+        LoggedWarnings.SILENT);
+    chunks = worldState.getChunks();
+    renderer = new ChunkyRenderer(spp, false, 0, 0, threads, 100, spp, 0, 0, 0);
+    context = new FileBufferRenderContext();
+    loadedScene = loadChunksPacked();
+
+    imageScene = context.getChunky().getSceneFactory().newScene();
+    imageScene.copyState(loadedScene, true);
+    imageScene.copyTransients(loadedScene);
+    applyView(imageScene);
+
+    denoiser = new Oidn4jDenoiser();
+    Random random = new Random(42);
+    beauty = new float[TILE_SIZE * TILE_SIZE * 3];
+    albedo = new float[TILE_SIZE * TILE_SIZE * 3];
+    normal = new float[TILE_SIZE * TILE_SIZE * 3];
+    for (int i = 0; i < beauty.length; i++) {
+      beauty[i] = random.nextFloat();
+      albedo[i] = 0.5f;
+      normal[i] = i % 3 == 1 ? 1 : 0;
+    }
+  }
+
+  @Benchmark
+  public Scene loadChunksPacked() {
+    Scene scene = context.getChunky().getSceneFactory().newScene();
+    scene.setOctreeImplementation("PACKED");
+    scene.loadChunks(SilentTaskTracker.INSTANCE, world, chunks);
+    applyView(scene);
+    return scene;
+  }
+
+  @Benchmark
+  public BufferedImage pathTrace() throws Exception {
+    try {
+      return renderer.render(context, new File[0], scene -> {
+        scene.copyState(loadedScene, true);
+        applyView(scene);
+      }).get();
+    } finally {
+      context.dispose();
+    }
+  }
+
+  @Benchmark
+  public void getImage(Blackhole blackhole) throws ReflectiveOperationException {
+    BufferedImage image = ChunkyRenderer.getImage(imageScene);
+    blackhole.consume(image);
+    // tiles release their images once they are stored, so measure the steady state of the pool
+    ImageBufferPool.INSTANCE.release(image);
+  }
+
+  @Benchmark
+  public float[] denoise() {
+    return denoiser.denoise(TILE_SIZE, TILE_SIZE, beauty, albedo, normal);
+  }
+
+  /**
+   * Look at the center of the world from above, like an isometric map with an inclination of 30
+   * degrees.
+   */
+  private void applyView(Scene scene) {
+    scene.setCanvasSize(TILE_SIZE, TILE_SIZE);
+    scene.setTransparentSky(true);
+    Camera camera = scene.camera();
+    camera.setProjectionMode(ProjectionMode.PARALLEL);
+    camera.setPosition(new Vector3(worldSize * 8, 192, worldSize * 8));
+    camera.setView(Math.PI / 4, -Math.PI / 3, 0);
+    camera.setFoV(16);
+    camera.setDof(Double.POSITIVE_INFINITY);
+  }
+}
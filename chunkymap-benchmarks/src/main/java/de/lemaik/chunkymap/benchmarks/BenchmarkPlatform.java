@@ -0,0 +1,32 @@
+package de.lemaik.chunkymap.benchmarks;
+
+import de.lemaik.chunkymap.Platform;
+import java.io.File;
+
+/**
+ * A {@link Platform} that keeps all data in the given folder, for running ChunkyMap outside of a
+ * server.
+ */
+public class BenchmarkPlatform extends Platform {
+
+  private final File dataFolder;
+
+  public BenchmarkPlatform(File dataFolder) {
+    this.dataFolder = dataFolder;
+  }
+
+  @Override
+  public File getDataFolder() {
+    return dataFolder;
+  }
+
+  @Override
+  public File getDynmapDataFolder() {
+    return dataFolder;
+  }
+
+  @Override
+  public String getMinecraftVersion() {
+    return "1.21.4";
+  }
+}
@@ -0,0 +1,233 @@
+package de.lemaik.chunkymap.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates a small, deterministic Minecraft 1.21 world for benchmarks: rolling hills of stone,
+ * dirt and grass with water in the valleys. All chunks are in the region <code>r.0.0.mca</code>.
+ */
+public class SyntheticWorld {
+
+  public static final int DATA_VERSION = 3953;
+  private static final int MIN_SECTION = -4;
+  private static final int MAX_SECTION = 19;
+  private static final int SEA_LEVEL = 62;
+  private static final String[] PALETTE = {"minecraft:air", "minecraft:bedrock",
+      "minecraft:stone", "minecraft:dirt", "minecraft:grass_block", "minecraft:sand",
+      "minecraft:water"};
+  private static final int AIR = 0;
+  private static final int BEDROCK = 1;
+  private static final int STONE = 2;
+  private static final int DIRT = 3;
+  private static final int GRASS = 4;
+  private static final int SAND = 5;
+  private static final int WATER = 6;
+
+  private SyntheticWorld() {
+  }
+
+  /**
+   * Generate a world with the given size in the given folder.
+   *
+   * @param folder world folder
+   * @param size   size of the world in chunks along both axes, at most 32
+   */
+  public static void generate(File folder, int size) throws IOException {
+    if (size < 1 || size > 32) {
+      throw new IllegalArgumentException("The world size must be between 1 and 32 chunks");
+    }
+    File regionFolder = new File(folder, "region");
+    regionFolder.mkdirs();
+    writeLevelDat(new File(folder, "level.dat"), size);
+
+    int[] locations = new int[1024];
+    int[] timestamps = new int[1024];
+    int timestamp = 1_700_000_000;
+    try (RandomAccessFile region = new RandomAccessFile(new File(regionFolder, "r.0.0.mca"),
+        "rw")) {
+      region.setLength(0);
+      int sector = 2;
+      for (int z = 0; z < size; z++) {
+        for (int x = 0; x < size; x++) {
+          ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+          try (DataOutputStream out = new DataOutputStream(
+              new DeflaterOutputStream(compressed))) {
+            writeChunk(out, x, z);
+          }
+          byte[] data = compressed.toByteArray();
+          int sectorCount = (data.length + 5 + 4095) / 4096;
+          region.seek(sector * 4096L);
+          region.writeInt(data.length + 1);
+          region.writeByte(2); // zlib
+          region.write(data);
+          locations[x + z * 32] = (sector << 8) | sectorCount;
+          timestamps[x + z * 32] = timestamp;
+          sector += sectorCount;
+        }
+      }
+      region.setLength(sector * 4096L);
+      region.seek(0);
+      for (int location : locations) {
+        region.writeInt(location);
+      }
+      for (int t : timestamps) {
+        region.writeInt(t);
+      }
+    }
+  }
+
+  private static int getHeight(int x, int z) {
+    return SEA_LEVEL + (int) Math.round(8 * Math.sin(x / 11.0) * Math.cos(z / 7.0)
+        + 3 * Math.sin((x + z) / 5.0));
+  }
+
+  private static int getBlock(int x, int y, int z) {
+    int height = getHeight(x, z);
+    if (y == -64) {
+      return BEDROCK;
+    } else if (y < height - 3) {
+      return STONE;
+    } else if (y < height) {
+      return height <= SEA_LEVEL ? SAND : DIRT;
+    } else if (y == height) {
+      return height < SEA_LEVEL ? SAND : GRASS;
+    } else if (y <= SEA_LEVEL) {
+      return WATER;
+    }
+    return AIR;
+  }
+
+  private static void writeLevelDat(File file, int size) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(
+        new GZIPOutputStream(new FileOutputStream(file)))) {
+      beginCompound(out, "");
+      beginCompound(out, "Data");
+      writeInt(out, "version", 19133);
+      writeInt(out, "DataVersion", DATA_VERSION);
+      writeString(out, "LevelName", "Synthetic");
+      writeString(out, "generatorName", "default");
+      writeLong(out, "RandomSeed", 0);
+      writeLong(out, "LastPlayed", 0);
+      writeInt(out, "GameType", 1);
+      writeInt(out, "SpawnX", size * 8);
+      writeInt(out, "SpawnY", getHeight(size * 8, size * 8) + 1);
+      writeInt(out, "SpawnZ", size * 8);
+      beginCompound(out, "Version");
+      writeInt(out, "Id", DATA_VERSION);
+      writeString(out, "Name", "1.21");
+      writeString(out, "Series", "main");
+      writeByte(out, "Snapshot", 0);
+      endCompound(out);
+      endCompound(out);
+      endCompound(out);
+    }
+  }
+
+  private static void writeChunk(DataOutputStream out, int chunkX, int chunkZ)
+      throws IOException {
+    beginCompound(out, "");
+    writeInt(out, "DataVersion", DATA_VERSION);
+    writeInt(out, "xPos", chunkX);
+    writeInt(out, "yPos", MIN_SECTION);
+    writeInt(out, "zPos", chunkZ);
+    writeString(out, "Status", "minecraft:full");
+    writeLong(out, "LastUpdate", 0);
+
+    beginList(out, "sections", 10, MAX_SECTION - MIN_SECTION + 1);
+    for (int sectionY = MIN_SECTION; sectionY <= MAX_SECTION; sectionY++) {
+      int[] blocks = new int[4096];
+      boolean uniform = true;
+      for (int y = 0; y < 16; y++) {
+        for (int z = 0; z < 16; z++) {
+          for (int x = 0; x < 16; x++) {
+            int index = (y * 16 + z) * 16 + x;
+            blocks[index] = getBlock(chunkX * 16 + x, sectionY * 16 + y, chunkZ * 16 + z);
+            uniform &= blocks[index] == blocks[0];
+          }
+        }
+      }
+
+      writeByte(out, "Y", sectionY);
+      beginCompound(out, "block_states");
+      if (uniform) {
+        beginList(out, "palette", 10, 1);
+        writeString(out, "Name", PALETTE[blocks[0]]);
+        endCompound(out);
+      } else {
+        // the palette indices are the same as the block IDs, 4 bits per block
+        beginList(out, "palette", 10, PALETTE.length);
+        for (String block : PALETTE) {
+          writeString(out, "Name", block);
+          endCompound(out);
+        }
+        long[] data = new long[4096 / 16];
+        for (int i = 0; i < 4096; i++) {
+          data[i / 16] |= (long) blocks[i] << ((i % 16) * 4);
+        }
+        out.writeByte(12);
+        out.writeUTF("data");
+        out.writeInt(data.length);
+        for (long value : data) {
+          out.writeLong(value);
+        }
+      }
+      endCompound(out);
+      beginCompound(out, "biomes");
+      beginList(out, "palette", 8, 1);
+      out.writeUTF("minecraft:plains");
+      endCompound(out); // biomes
+      endCompound(out); // section
+    }
+    endCompound(out);
+  }
+
+  private static void beginCompound(DataOutputStream out, String name) throws IOException {
+    out.writeByte(10);
+    out.writeUTF(name);
+  }
+
+  private static void endCompound(DataOutputStream out) throws IOException {
+    out.writeByte(0);
+  }
+
+  private static void beginList(DataOutputStream out, String name, int type, int size)
+      throws IOException {
+    out.writeByte(9);
+    out.writeUTF(name);
+    out.writeByte(type);
+    out.writeInt(size);
+  }
+
+  private static void writeByte(DataOutputStream out, String name, int value) throws IOException {
+    out.writeByte(1);
+    out.writeUTF(name);
+    out.writeByte(value);
+  }
+
+  private static void writeInt(DataOutputStream out, String name, int value) throws IOException {
+    out.writeByte(3);
+    out.writeUTF(name);
+    out.writeInt(value);
+  }
+
+  private static void writeLong(DataOutputStream out, String name, long value)
+      throws IOException {
+    out.writeByte(4);
+    out.writeUTF(name);
+    out.writeLong(value);
+  }
+
+  private static void writeString(DataOutputStream out, String name, String value)
+      throws IOException {
+    out.writeByte(8);
+    out.writeUTF(name);
+    out.writeUTF(value);
+  }
+}
@@ -0,0 +1,263 @@
+package de.lemaik.chunkymap.benchmarks.cloud;
+
+import de.lemaik.chunkymap.Platform;
+import de.lemaik.chunkymap.benchmarks.BenchmarkPlatform;
+import de.lemaik.chunkymap.rendering.rs.ApiClient;
+import de.lemaik.chunkymap.rendering.rs.RenderJob;
+import de.lemaik.chunkymap.util.RegionHeader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import se.llbit.util.ProgressListener;
+import se.llbit.util.TaskTracker;
+
+/**
+ * Drives many tiles through the {@link ApiClient} against a {@link MockRenderService} and reports
+ * the throughput, tile latencies and bytes on the wire.
+ * <p>
+ * Options are passed as <code>--name=value</code>:
+ * <ul>
+ *   <li><code>tiles</code>: number of tiles to render (100)</li>
+ *   <li><code>window</code>: maximum number of jobs in flight, 1 is equivalent to the sequential
+ *   mode (4)</li>
+ *   <li><code>latency</code>: latency of every response in ms (50)</li>
+ *   <li><code>bandwidth</code>: bandwidth in bytes per second, 0 for unlimited (10000000)</li>
+ *   <li><code>renderTime</code>: remote render time per tile in ms (2000)</li>
+ *   <li><code>mode</code>: <code>octree</code> to upload a locally built octree per tile or
+ *   <code>regions</code> to upload region files (octree)</li>
+ *   <li><code>octreeSize</code>: size of the synthetic octree in bytes (20000000)</li>
+ *   <li><code>regions</code>: number of synthetic region files (16)</li>
+ *   <li><code>regionsPerTile</code>: number of region files every tile uses (2)</li>
+ *   <li><code>changedChunks</code>: number of chunks that change before every tile (1)</li>
+ *   <li><code>compression</code>: gzip the scene and octree uploads (false)</li>
+ *   <li><code>chunkUploads</code>: only upload missing chunks of regions (false)</li>
+ * </ul>
+ */
+public class LoadTest {
+
+  private final Map<String, String> options;
+  private final Random random = new Random(42);
+
+  private LoadTest(Map<String, String> options) {
+    this.options = options;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      if (arg.startsWith("--")) {
+        int separator = arg.indexOf('=');
+        if (separator > 0) {
+          options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        } else {
+          options.put(arg.substring(2), "true");
+        }
+      }
+    }
+    new LoadTest(options).run();
+  }
+
+  private int getInt(String name, int defaultValue) {
+    return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+  }
+
+  private boolean getBoolean(String name) {
+    return Boolean.parseBoolean(options.getOrDefault(name, "false"));
+  }
+
+  private void run() throws Exception {
+    File workDir = Files.createTempDirectory("chunkymap-loadtest").toFile();
+    Platform.setInstance(new BenchmarkPlatform(workDir));
+
+    int tiles = getInt("tiles", 100);
+    int window = Math.max(1, getInt("window", 4));
+    boolean regionMode = options.getOrDefault("mode", "octree").equals("regions");
+    int changedChunks = getInt("changedChunks", 1);
+    int regionsPerTile = getInt("regionsPerTile", 2);
+
+    byte[] scene = createScene();
+    File octree = regionMode ? null : createOctree(new File(workDir, "scene.octree2"),
+        getInt("octreeSize", 20_000_000));
+    List<File> regions = regionMode ? createRegions(new File(workDir, "region"),
+        getInt("regions", 16)) : Collections.emptyList();
+
+    try (MockRenderService service = new MockRenderService(0, getInt("latency", 50),
+        getInt("bandwidth", 10_000_000), getInt("renderTime", 2000),
+        getBoolean("chunkUploads"))) {
+      ApiClient api = new ApiClient(service.getUrl(), "loadtest", getBoolean("compression"),
+          getBoolean("chunkUploads"));
+      ExecutorService downloadExecutor = Executors.newCachedThreadPool();
+      Semaphore jobWindow = new Semaphore(window);
+      CountDownLatch done = new CountDownLatch(tiles);
+      AtomicInteger failed = new AtomicInteger();
+      List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+
+      long start = System.nanoTime();
+      for (int i = 0; i < tiles; i++) {
+        CompletableFuture<RenderJob> job;
+        jobWindow.acquire();
+        long tileStart = System.nanoTime();
+        TaskTracker taskTracker = new TaskTracker(ProgressListener.NONE);
+        if (regionMode) {
+          for (int j = 0; j < changedChunks; j++) {
+            changeChunk(regions.get(random.nextInt(regions.size())));
+          }
+          int first = random.nextInt(regions.size());
+          List<File> tileRegions = new ArrayList<>();
+          for (int j = 0; j < Math.min(regionsPerTile, regions.size()); j++) {
+            tileRegions.add(regions.get((first + j) % regions.size()));
+          }
+          job = api.createJob(scene, tileRegions, null, null, null, 100, taskTracker);
+        } else {
+          job = api.createJob(scene, octree, null, null, null, 100, taskTracker);
+        }
+        job.thenCompose(createdJob -> api.waitForCompletion(createdJob, 10, TimeUnit.MINUTES))
+            .thenApplyAsync(completedJob -> {
+              try {
+                return api.getPicture(completedJob.getId());
+              } catch (IOException e) {
+                throw new CompletionException(e);
+              }
+            }, downloadExecutor)
+            .whenComplete((image, e) -> {
+              if (e != null) {
+                failed.incrementAndGet();
+                e.printStackTrace();
+              } else {
+                latencies.add((System.nanoTime() - tileStart) / 1_000_000);
+              }
+              jobWindow.release();
+              done.countDown();
+            });
+      }
+      done.await();
+      long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+      downloadExecutor.shutdown();
+
+      List<Long> sorted = new ArrayList<>(latencies);
+      Collections.sort(sorted);
+      System.out.printf("Tiles:            %d (%d failed)%n", tiles, failed.get());
+      System.out.printf("Total time:       %d ms (%.2f tiles/s)%n", elapsedMs,
+          tiles * 1000.0 / elapsedMs);
+      if (!sorted.isEmpty()) {
+        System.out.printf("Tile latency:     p50 %d ms, p95 %d ms, max %d ms%n",
+            sorted.get(sorted.size() / 2), sorted.get((int) (sorted.size() * 0.95)),
+            sorted.get(sorted.size() - 1));
+      }
+      System.out.printf("Requests:         %d (%d jobs rejected for missing data)%n",
+          service.getRequests(), service.getRejectedJobs());
+      System.out.printf("Bytes on wire:    %d up, %d down%n", service.getBytesReceived(),
+          service.getBytesSent());
+      System.out.printf("Bytes decoded:    %d (%.1f bytes per tile on wire)%n",
+          service.getBytesDecoded(), (double) service.getBytesReceived() / tiles);
+    } finally {
+      deleteRecursively(workDir);
+    }
+  }
+
+  private byte[] createScene() {
+    StringBuilder scene = new StringBuilder("{\"sdfVersion\":9,\"name\":\"loadtest\",\"chunkList\":[");
+    for (int i = 0; i < 1024; i++) {
+      scene.append(i == 0 ? "" : ",").append("[").append(i % 32).append(",").append(i / 32)
+          .append("]");
+    }
+    return scene.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Create a file that compresses roughly like an octree of mostly air and stone, i.e. long runs
+   * of repeated node values with some noise.
+   */
+  private File createOctree(File file, int size) throws IOException {
+    byte[] data = new byte[size];
+    int value = 0;
+    for (int i = 0; i < size; i += 4) {
+      if (random.nextInt(16) == 0) {
+        value = random.nextInt(64);
+      }
+      data[i] = (byte) value;
+    }
+    Files.write(file.toPath(), data);
+    return file;
+  }
+
+  /**
+   * Create region files in which every chunk takes one sector of incompressible data.
+   */
+  private List<File> createRegions(File folder, int count) throws IOException {
+    folder.mkdirs();
+    List<File> regions = new ArrayList<>();
+    byte[] sector = new byte[RegionHeader.SECTOR_SIZE];
+    for (int i = 0; i < count; i++) {
+      File region = new File(folder, "r." + i + ".0.mca");
+      try (RandomAccessFile file = new RandomAccessFile(region, "rw")) {
+        for (int chunk = 0; chunk < 1024; chunk++) {
+          file.writeInt(((2 + chunk) << 8) | 1);
+        }
+        for (int chunk = 0; chunk < 1024; chunk++) {
+          file.writeInt(1);
+        }
+        for (int chunk = 0; chunk < 1024; chunk++) {
+          random.nextBytes(sector);
+          writeChunk(sector);
+          file.write(sector);
+        }
+      }
+      regions.add(region);
+    }
+    return regions;
+  }
+
+  private void changeChunk(File region) throws IOException {
+    int chunk = random.nextInt(1024);
+    byte[] sector = new byte[RegionHeader.SECTOR_SIZE];
+    random.nextBytes(sector);
+    writeChunk(sector);
+    try (RandomAccessFile file = new RandomAccessFile(region, "rw")) {
+      file.seek(RegionHeader.SECTOR_SIZE + chunk * 4L);
+      file.writeInt((int) (System.currentTimeMillis() / 1000));
+      file.seek((2L + chunk) * RegionHeader.SECTOR_SIZE);
+      file.write(sector);
+    }
+    // make sure that the modification is detected even within the mtime resolution
+    region.setLastModified(region.lastModified() + 1000);
+  }
+
+  /**
+   * Add the length and compression type (uncompressed) of a chunk to the given sector.
+   */
+  private static void writeChunk(byte[] sector) {
+    int length = sector.length - 4;
+    sector[0] = (byte) (length >>> 24);
+    sector[1] = (byte) (length >>> 16);
+    sector[2] = (byte) (length >>> 8);
+    sector[3] = (byte) length;
+    sector[4] = 3;
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,345 @@
+package de.lemaik.chunkymap.benchmarks.cloud;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.lemaik.chunkymap.util.RegionChunks;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+
+/**
+ * A local stand-in for the <code>/jobs</code> API of the ChunkyCloud render service, as used by
+ * the {@link de.lemaik.chunkymap.rendering.rs.ApiClient}.
+ * <p>
+ * Jobs don't render anything, their SPP increases linearly until the target SPP is reached after
+ * the configured render time. Every response is delayed by the configured latency and request and
+ * response bodies are throttled to the configured bandwidth. Region files are remembered by their
+ * hash, so that jobs that reference unknown regions are answered with the <code>missing</code>
+ * regions (and <code>missingChunks</code> if chunk uploads are enabled), like the real service.
+ */
+public class MockRenderService implements Closeable {
+
+  private static final Gson gson = new Gson();
+
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "Mock render service");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final long latencyMs;
+  private final long bytesPerSecond;
+  private final long renderTimeMs;
+  private final boolean chunkUploads;
+  private final byte[] image;
+
+  private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+  private final Set<String> knownRegions = ConcurrentHashMap.newKeySet();
+  private final Set<String> knownChunks = ConcurrentHashMap.newKeySet();
+
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong bytesReceived = new AtomicLong();
+  private final AtomicLong bytesDecoded = new AtomicLong();
+  private final AtomicLong bytesSent = new AtomicLong();
+  private final AtomicLong rejectedJobs = new AtomicLong();
+
+  /**
+   * Start a mock render service on the given port.
+   *
+   * @param port           port to listen on, 0 to pick a free port
+   * @param latencyMs      delay of every response
+   * @param bytesPerSecond bandwidth of request and response bodies, 0 for unlimited
+   * @param renderTimeMs   time it takes a job to reach its target SPP
+   * @param chunkUploads   answer with the missing chunks of regions that are listed in the
+   *                       <code>cachedChunks</code> manifest
+   */
+  public MockRenderService(int port, long latencyMs, long bytesPerSecond, long renderTimeMs,
+      boolean chunkUploads) throws IOException {
+    this.latencyMs = latencyMs;
+    this.bytesPerSecond = bytesPerSecond;
+    this.renderTimeMs = renderTimeMs;
+    this.chunkUploads = chunkUploads;
+
+    BufferedImage tile = new BufferedImage(128, 128, BufferedImage.TYPE_INT_ARGB);
+    for (int y = 0; y < 128; y++) {
+      for (int x = 0; x < 128; x++) {
+        tile.setRGB(x, y, 0xFF000000 | (x * 2) << 16 | (y * 2) << 8 | 0x80);
+      }
+    }
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    ImageIO.write(tile, "png", png);
+    image = png.toByteArray();
+
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+    server.createContext("/jobs", this::handle);
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  /**
+   * @return base URL of this service, to be passed to the API client
+   */
+  public String getUrl() {
+    return "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  public long getRequests() {
+    return requests.get();
+  }
+
+  /**
+   * @return number of request body bytes received, i.e. bytes on the wire
+   */
+  public long getBytesReceived() {
+    return bytesReceived.get();
+  }
+
+  /**
+   * @return size of all received multipart parts after decompressing them
+   */
+  public long getBytesDecoded() {
+    return bytesDecoded.get();
+  }
+
+  public long getBytesSent() {
+    return bytesSent.get();
+  }
+
+  /**
+   * @return number of job requests that were rejected because of missing regions or chunks
+   */
+  public long getRejectedJobs() {
+    return rejectedJobs.get();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      requests.incrementAndGet();
+      byte[] body = readBody(exchange.getRequestBody());
+      Thread.sleep(latencyMs);
+
+      String[] path = exchange.getRequestURI().getPath().split("/");
+      String method = exchange.getRequestMethod();
+      if (path.length == 2 && method.equals("POST")) {
+        createJob(exchange, body);
+      } else if (path.length == 3 && method.equals("GET")) {
+        Job job = jobs.get(path[2]);
+        if (job == null) {
+          send(exchange, 404, null, null);
+        } else {
+          send(exchange, 200, "application/json", job.toJson().toString()
+              .getBytes(StandardCharsets.UTF_8));
+        }
+      } else if (path.length == 3 && method.equals("PATCH")) {
+        Job job = jobs.get(path[2]);
+        if (job == null) {
+          send(exchange, 404, null, null);
+        } else {
+          job.cancelled = true;
+          send(exchange, 204, null, null);
+        }
+      } else if (path.length == 4 && path[3].equals("latest.png") && method.equals("GET")) {
+        send(exchange, jobs.containsKey(path[2]) ? 200 : 404, "image/png", image);
+      } else {
+        send(exchange, 404, null, null);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      e.printStackTrace();
+      send(exchange, 500, null, null);
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private void createJob(HttpExchange exchange, byte[] body) throws IOException {
+    List<Multipart.Part> parts = Multipart
+        .parse(exchange.getRequestHeaders().getFirst("Content-Type"), body);
+    Map<String, Multipart.Part> fields = new HashMap<>();
+    for (Multipart.Part part : parts) {
+      bytesDecoded.addAndGet(part.content.length);
+      if (part.name.equals("region")) {
+        addRegion(part.content);
+      } else {
+        fields.put(part.name, part);
+      }
+    }
+
+    JsonArray missing = new JsonArray();
+    JsonObject missingChunks = new JsonObject();
+    if (fields.containsKey("cachedRegions")) {
+      JsonObject cachedRegions = gson.fromJson(fields.get("cachedRegions").getString(),
+          JsonObject.class);
+      JsonObject cachedChunks = chunkUploads && fields.containsKey("cachedChunks")
+          ? gson.fromJson(fields.get("cachedChunks").getString(), JsonObject.class)
+          : new JsonObject();
+      for (Map.Entry<String, JsonElement> region : cachedRegions.entrySet()) {
+        if (knownRegions.contains(region.getValue().getAsString())) {
+          continue;
+        }
+        if (!cachedChunks.has(region.getKey())) {
+          missing.add(region.getKey());
+          continue;
+        }
+        JsonArray regionMissingChunks = new JsonArray();
+        for (Map.Entry<String, JsonElement> chunk : cachedChunks
+            .getAsJsonObject(region.getKey()).entrySet()) {
+          if (!knownChunks.contains(chunk.getValue().getAsString())) {
+            regionMissingChunks.add(Integer.parseInt(chunk.getKey()));
+          }
+        }
+        if (regionMissingChunks.size() > 0) {
+          missingChunks.add(region.getKey(), regionMissingChunks);
+        } else {
+          // all chunks of the region are known now
+          knownRegions.add(region.getValue().getAsString());
+        }
+      }
+    }
+
+    if (missing.size() > 0 || missingChunks.size() > 0) {
+      rejectedJobs.incrementAndGet();
+      JsonObject response = new JsonObject();
+      response.add("missing", missing);
+      if (chunkUploads) {
+        response.add("missingChunks", missingChunks);
+      }
+      send(exchange, 400, "application/json",
+          response.toString().getBytes(StandardCharsets.UTF_8));
+      return;
+    }
+
+    Job job = new Job(UUID.randomUUID().toString(),
+        fields.containsKey("targetSpp") ? Integer.parseInt(fields.get("targetSpp").getString())
+            : 100);
+    jobs.put(job.id, job);
+    send(exchange, 201, "application/json",
+        job.toJson().toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void addRegion(byte[] region) throws IOException {
+    knownRegions.add(md5(region));
+    File file = Files.createTempFile("mock-region", ".mca").toFile();
+    try {
+      Files.write(file.toPath(), region);
+      knownChunks.addAll(RegionChunks.hashChunks(file).values());
+    } finally {
+      file.delete();
+    }
+  }
+
+  private byte[] readBody(InputStream in) throws IOException, InterruptedException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    byte[] buffer = new byte[64 * 1024];
+    long start = System.nanoTime();
+    for (int read; (read = in.read(buffer)) != -1; ) {
+      body.write(buffer, 0, read);
+      throttle(start, body.size());
+    }
+    bytesReceived.addAndGet(body.size());
+    return body.toByteArray();
+  }
+
+  private void send(HttpExchange exchange, int status, String contentType, byte[] body)
+      throws IOException {
+    if (contentType != null) {
+      exchange.getResponseHeaders().set("Content-Type", contentType);
+    }
+    if (body == null) {
+      exchange.sendResponseHeaders(status, -1);
+      return;
+    }
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      long start = System.nanoTime();
+      for (int offset = 0; offset < body.length; offset += 64 * 1024) {
+        out.write(body, offset, Math.min(64 * 1024, body.length - offset));
+        throttle(start, offset);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    bytesSent.addAndGet(body.length);
+  }
+
+  /**
+   * Sleep until transferring the given number of bytes at the configured bandwidth would be done.
+   */
+  private void throttle(long startNanos, long bytes) throws InterruptedException {
+    if (bytesPerSecond <= 0) {
+      return;
+    }
+    long expectedMs = bytes * 1000 / bytesPerSecond;
+    long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+    if (expectedMs > elapsedMs) {
+      Thread.sleep(expectedMs - elapsedMs);
+    }
+  }
+
+  private static String md5(byte[] data) {
+    try {
+      StringBuilder hex = new StringBuilder();
+      for (byte b : MessageDigest.getInstance("MD5").digest(data)) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 is not supported", e);
+    }
+  }
+
+  private class Job {
+
+    private final String id;
+    private final int targetSpp;
+    private final long createdAt = System.currentTimeMillis();
+    private volatile boolean cancelled = false;
+
+    private Job(String id, int targetSpp) {
+      this.id = id;
+      this.targetSpp = targetSpp;
+    }
+
+    private JsonObject toJson() {
+      long elapsed = System.currentTimeMillis() - createdAt;
+      int spp = renderTimeMs <= 0 ? targetSpp
+          : (int) Math.min(targetSpp, targetSpp * elapsed / renderTimeMs);
+      JsonObject json = new JsonObject();
+      json.addProperty("_id", id);
+      json.addProperty("spp", cancelled ? 0 : spp);
+      json.addProperty("targetSpp", targetSpp);
+      json.addProperty("cancelled", cancelled);
+      return json;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package de.lemaik.chunkymap.benchmarks.cloud;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A minimal parser for <code>multipart/form-data</code> request bodies, as sent by the
+ * {@link de.lemaik.chunkymap.rendering.rs.ApiClient}. Parts with a
+ * <code>Content-Encoding: gzip</code> header are decompressed.
+ */
+class Multipart {
+
+  private static final Pattern BOUNDARY = Pattern.compile("boundary=\"?([^\";]+)\"?");
+  private static final Pattern NAME = Pattern.compile("\\bname=\"([^\"]*)\"");
+  private static final Pattern FILENAME = Pattern.compile("\\bfilename=\"([^\"]*)\"");
+
+  private Multipart() {
+  }
+
+  /**
+   * Parse a multipart body.
+   *
+   * @param contentType value of the Content-Type header of the request
+   * @param body        request body
+   * @return the parts of the body
+   */
+  static List<Part> parse(String contentType, byte[] body) throws IOException {
+    Matcher boundaryMatcher = BOUNDARY.matcher(contentType == null ? "" : contentType);
+    if (!boundaryMatcher.find()) {
+      throw new IOException("Not a multipart request: " + contentType);
+    }
+    byte[] delimiter = ("--" + boundaryMatcher.group(1)).getBytes(StandardCharsets.US_ASCII);
+
+    List<Part> parts = new ArrayList<>();
+    int start = indexOf(body, delimiter, 0);
+    while (start >= 0) {
+      int headersStart = start + delimiter.length;
+      if (headersStart + 2 <= body.length && body[headersStart] == '-'
+          && body[headersStart + 1] == '-') {
+        break; // closing delimiter
+      }
+      headersStart += 2; // CRLF after the delimiter
+      int headersEnd = indexOf(body, "\r\n\r\n".getBytes(StandardCharsets.US_ASCII),
+          headersStart);
+      int next = indexOf(body, ("\r\n" + new String(delimiter, StandardCharsets.US_ASCII))
+          .getBytes(StandardCharsets.US_ASCII), headersEnd);
+      if (headersEnd < 0 || next < 0) {
+        throw new IOException("Malformed multipart body");
+      }
+
+      Map<String, String> headers = new HashMap<>();
+      for (String line : new String(body, headersStart, headersEnd - headersStart,
+          StandardCharsets.UTF_8).split("\r\n")) {
+        int colon = line.indexOf(':');
+        if (colon > 0) {
+          headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT),
+              line.substring(colon + 1).trim());
+        }
+      }
+      byte[] content = new byte[next - headersEnd - 4];
+      System.arraycopy(body, headersEnd + 4, content, 0, content.length);
+      parts.add(new Part(headers, content));
+      start = next + 2;
+    }
+    return parts;
+  }
+
+  private static int indexOf(byte[] data, byte[] pattern, int from) {
+    if (from < 0) {
+      return -1;
+    }
+    outer:
+    for (int i = from; i <= data.length - pattern.length; i++) {
+      for (int j = 0; j < pattern.length; j++) {
+        if (data[i + j] != pattern[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  static class Part {
+
+    final String name;
+    final String fileName;
+    /**
+     * Size of the part as it was sent, i.e. before decompressing it.
+     */
+    final int encodedSize;
+    final byte[] content;
+
+    private Part(Map<String, String> headers, byte[] content) throws IOException {
+      String disposition = headers.getOrDefault("content-disposition", "");
+      Matcher name = NAME.matcher(disposition);
+      this.name = name.find() ? name.group(1) : "";
+      Matcher fileName = FILENAME.matcher(disposition);
+      this.fileName = fileName.find() ? fileName.group(1) : null;
+      this.encodedSize = content.length;
+      if ("gzip".equalsIgnoreCase(headers.get("content-encoding"))) {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(content))) {
+          content = in.readAllBytes();
+        }
+      }
+      this.content = content;
+    }
+
+    String getString() {
+      return new String(content, StandardCharsets.UTF_8);
+    }
+  }
+}
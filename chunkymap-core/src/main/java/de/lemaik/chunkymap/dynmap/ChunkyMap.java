@@ -1,6 +1,8 @@
 package de.lemaik.chunkymap.dynmap;
 
 import de.lemaik.chunkymap.Platform;
+import de.lemaik.chunkymap.metrics.MetricsEndpoint;
+import de.lemaik.chunkymap.rendering.RenderContextPool;
 import de.lemaik.chunkymap.rendering.Renderer;
 import de.lemaik.chunkymap.rendering.local.ChunkyRenderer;
 import de.lemaik.chunkymap.rendering.rs.RemoteRenderer;
@@ -13,7 +15,10 @@ import org.dynmap.*;
 import org.dynmap.hdmap.HDMap;
 import org.dynmap.hdmap.HDPerspective;
 import org.dynmap.hdmap.IsoHDPerspective;
+import se.llbit.chunky.main.Version;
 import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.chunky.world.ChunkPosition;
+import se.llbit.chunky.world.World;
 import se.llbit.json.JsonNumber;
 import se.llbit.json.JsonObject;
 import se.llbit.json.JsonParser;
@@ -24,8 +29,14 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -34,15 +45,32 @@ import java.util.stream.Collectors;
 public class ChunkyMap extends HDMap {
 
   private static final String DEFAULT_TEXTUREPACK_VERSION = Platform.getInstance().getMinecraftVersion();
+  private static final long BLOCK_RENDER_EXPIRY = TimeUnit.MINUTES.toMillis(10);
   public final DynmapCameraAdapter cameraAdapter;
   private final Renderer renderer;
+  private final RenderContextPool renderContextPool = new RenderContextPool();
   private File defaultTexturepackPath;
   private File[] resourcepackPaths;
   private File worldPath;
   private final Object worldPathLock = new Object();
+  private final ChunkyWorldCache worldCache = new ChunkyWorldCache();
+  private final LoadedChunkCache chunkCache;
+  private final int chunkCacheMargin;
+  private final int tileBlockSize;
+  private final Map<ChunkyMapTile, Long> tilesRenderedInBlock = new ConcurrentHashMap<>();
   private JsonObject templateScene;
   private final int chunkPadding;
   private final boolean requeueFailedTiles;
+  private final boolean skipUnchangedTiles;
+  private final long fingerprint;
+  private TileFingerprintIndex fingerprintIndex;
+  private final int changeDetectionInterval;
+  private ScheduledFuture<?> changeDetection;
+  private ScheduledFuture<?> priorityQueueFeed;
+  private volatile DynmapWorld enabledWorld;
+  private volatile boolean disabled = false;
+  private final TilePriorityQueue priorityQueue;
+  private final TileWriter tileWriter;
 
   public ChunkyMap(DynmapCore dynmap, ConfigurationNode config) {
     super(dynmap, config);
@@ -51,7 +79,10 @@ public class ChunkyMap extends HDMap {
       renderer = new RemoteRenderer(config.getString("chunkycloud/apiKey", ""),
           config.getInteger("samplesPerPixel", 100),
           config.getString("texturepack", null),
-          config.getBoolean("chunkycloud/initializeLocally", true));
+          config.getBoolean("chunkycloud/initializeLocally", true),
+          Math.max(0, config.getInteger("chunkycloud/maxJobsInFlight", 0)),
+          config.getBoolean("chunkycloud/compression", false),
+          config.getBoolean("chunkycloud/chunkUploads", false));
       if (config.getString("chunkycloud/apiKey", "").isEmpty()) {
         Log.warn("No ChunkyCloud API Key configured.");
       }
@@ -62,11 +93,44 @@ public class ChunkyMap extends HDMap {
           config.getInteger("denoiser/albedoSamplesPerPixel", 16),
           config.getInteger("denoiser/normalSamplesPerPixel", 16),
           config.getInteger("chunkyThreads", 2),
-          Math.min(100, Math.max(0, config.getInteger("chunkyCpuLoad", 100)))
+          Math.min(100, Math.max(0, config.getInteger("chunkyCpuLoad", 100))),
+          config.getInteger("convergence/minSamplesPerPixel", 16),
+          config.getBoolean("convergence/enabled", false)
+              ? config.getDouble("convergence/threshold", 0.01) : 0,
+          config.getBoolean("adaptiveSampling/enabled", false)
+              ? config.getDouble("adaptiveSampling/threshold", 0.05) : 0,
+          config.getInteger("chunkyThreadBudget", 0)
       );
+      if (config.getBoolean("adaptiveSampling/enabled", false)
+          && config.getBoolean("denoiser/enabled", false)) {
+        Log.warn("Adaptive sampling can't be used together with the denoiser and will be ignored.");
+      }
     }
     chunkPadding = config.getInteger("chunkPadding", 0);
     requeueFailedTiles = config.getBoolean("requeueFailedTiles", true);
+    skipUnchangedTiles = config.getBoolean("skipUnchangedTiles", false);
+    if (config.getBoolean("priorityQueue/enabled", false)) {
+      priorityQueue = new TilePriorityQueue(dynmap, this,
+          config.getInteger("priorityQueue/maxQueuedTiles", 8),
+          config.getDouble("priorityQueue/tilesPerMinute", 1));
+    } else {
+      priorityQueue = null;
+    }
+    if (config.getBoolean("asyncWrites/enabled", false)) {
+      tileWriter = new TileWriter(Math.max(1, config.getInteger("asyncWrites/threads", 1)),
+          Math.max(1, config.getInteger("asyncWrites/queueSize", 8)));
+    } else {
+      tileWriter = null;
+    }
+    tileBlockSize = Math.max(1, config.getInteger("tileBlockSize", 1));
+    if (config.getBoolean("chunkCache/enabled", false)) {
+      chunkCache = new LoadedChunkCache(config.getInteger("chunkCache/maxChunks", 4096),
+          config.getInteger("chunkCache/maxBufferMemory", 64) * 1024L * 1024L);
+      chunkCacheMargin = Math.max(0, config.getInteger("chunkCache/margin", 0));
+    } else {
+      chunkCache = null;
+      chunkCacheMargin = 0;
+    }
 
     String texturepackVersion = config.getString("texturepackVersion", DEFAULT_TEXTUREPACK_VERSION);
     File texturepackPath = new File(Platform.getInstance().getDataFolder(), texturepackVersion + ".jar");
@@ -122,6 +186,47 @@ public class ChunkyMap extends HDMap {
         Log.error("Could not read the template scene.", e);
       }
     }
+
+    fingerprint = computeFingerprint(config);
+    MapLifecycle.watch(dynmap);
+
+    changeDetectionInterval = config.getBoolean("changeDetection/enabled", false)
+        ? Math.max(1, config.getInteger("changeDetection/interval", 60)) : 0;
+
+    if (config.getInteger("metrics/port", 0) > 0) {
+      MetricsEndpoint.start(config.getString("metrics/bindAddress", "127.0.0.1"),
+          config.getInteger("metrics/port", 0));
+    }
+  }
+
+  /**
+   * Compute a fingerprint of everything in the configuration of this map that affects how the
+   * tiles look.
+   */
+  private long computeFingerprint(ConfigurationNode config) {
+    StringBuilder inputs = new StringBuilder();
+    inputs.append(Version.getVersion()).append('\n');
+    inputs.append(getPerspective().getName()).append('\n');
+    inputs.append(getBoostZoom()).append('\n');
+    for (String key : new String[]{"samplesPerPixel", "chunkPadding", "chunkCache/enabled",
+        "chunkCache/margin", "tileBlockSize", "denoiser/enabled", "denoiser/albedoSamplesPerPixel",
+        "denoiser/normalSamplesPerPixel", "convergence/enabled", "convergence/threshold",
+        "convergence/minSamplesPerPixel", "adaptiveSampling/enabled", "adaptiveSampling/threshold",
+        "chunkycloud/enabled", "chunkycloud/initializeLocally", "texturepack"}) {
+      inputs.append(key).append('=').append(config.getObject(key)).append('\n');
+    }
+    List<File> resourcepacks = new ArrayList<>(Arrays.asList(resourcepackPaths));
+    if (defaultTexturepackPath != null) {
+      resourcepacks.add(defaultTexturepackPath);
+    }
+    for (File resourcepack : resourcepacks) {
+      inputs.append(resourcepack.getAbsolutePath()).append(':').append(resourcepack.length())
+          .append(':').append(resourcepack.lastModified()).append('\n');
+    }
+    if (templateScene != null) {
+      inputs.append(templateScene.toString());
+    }
+    return TileFingerprintIndex.hash(inputs.toString());
   }
 
   @Override
@@ -177,6 +282,10 @@ public class ChunkyMap extends HDMap {
     return renderer;
   }
 
+  RenderContextPool getRenderContextPool() {
+    return renderContextPool;
+  }
+
   File getDefaultTexturepackPath() {
     return defaultTexturepackPath;
   }
@@ -185,10 +294,158 @@ public class ChunkyMap extends HDMap {
     return resourcepackPaths;
   }
 
+  /**
+   * @return the writer that stores the rendered tiles or null if they are stored on the render
+   * thread
+   */
+  TileWriter getTileWriter() {
+    return tileWriter;
+  }
+
   int getChunkPadding() {
     return chunkPadding;
   }
 
+  LoadedChunkCache getChunkCache() {
+    return chunkCache;
+  }
+
+  int getChunkCacheMargin() {
+    return chunkCacheMargin;
+  }
+
+  int getTileBlockSize() {
+    return tileBlockSize;
+  }
+
+  /**
+   * Remember that a tile was rendered as part of a block of tiles. Dynmap doesn't necessarily
+   * render the other tiles of a block later, so tiles that it didn't ask for within
+   * {@link #BLOCK_RENDER_EXPIRY} are forgotten.
+   *
+   * @param tile       tile that was rendered
+   * @param renderedAt time the chunks of the tile were read at
+   */
+  void addTileRenderedInBlock(ChunkyMapTile tile, long renderedAt) {
+    long expired = System.currentTimeMillis() - BLOCK_RENDER_EXPIRY;
+    tilesRenderedInBlock.values().removeIf(time -> time < expired);
+    tilesRenderedInBlock.put(tile, renderedAt);
+  }
+
+  /**
+   * Forget that a tile was rendered as part of a block of tiles.
+   *
+   * @param tile tile
+   * @return time the chunks of the tile were read at or null if it wasn't rendered as part of a
+   * block recently
+   */
+  Long removeTileRenderedInBlock(ChunkyMapTile tile) {
+    Long renderedAt = tilesRenderedInBlock.remove(tile);
+    return renderedAt != null && renderedAt >= System.currentTimeMillis() - BLOCK_RENDER_EXPIRY
+        ? renderedAt : null;
+  }
+
+  /**
+   * @return fingerprint of the configuration of this map and of the zoom-out levels of the given
+   * world, which change the camera of the tiles
+   */
+  long getFingerprint(DynmapWorld world) {
+    return TileFingerprintIndex.hash(fingerprint + ":" + getMapZoomOutLevels() + ":"
+        + world.getExtraZoomOutLevels());
+  }
+
+  /**
+   * Start the background tasks of this map. Use {@link MapLifecycle#enable(ChunkyMap, DynmapWorld)}
+   * instead of calling this directly.
+   *
+   * @param world the world this map belongs to
+   */
+  synchronized void enable(DynmapWorld world) {
+    if (enabledWorld != null || disabled) {
+      return;
+    }
+    enabledWorld = world;
+    if (changeDetectionInterval > 0) {
+      changeDetection = new RegionChangeDetector(this, world).start(changeDetectionInterval);
+    }
+    if (priorityQueue != null) {
+      priorityQueueFeed = priorityQueue.start();
+    }
+  }
+
+  /**
+   * Stop the background tasks of this map and save its state. A disabled map can't be enabled
+   * again.
+   */
+  synchronized void disable() {
+    if (disabled) {
+      return;
+    }
+    disabled = true;
+    if (changeDetection != null) {
+      changeDetection.cancel(false);
+      changeDetection = null;
+    }
+    if (priorityQueueFeed != null) {
+      priorityQueueFeed.cancel(false);
+      priorityQueueFeed = null;
+    }
+    if (tileWriter != null) {
+      // write the queued tiles first, so that their fingerprints are saved, too
+      tileWriter.shutdown();
+    }
+    if (fingerprintIndex != null) {
+      fingerprintIndex.close();
+      fingerprintIndex = null;
+    }
+  }
+
+  boolean isEnabled() {
+    return enabledWorld != null;
+  }
+
+  boolean isDisabled() {
+    return disabled;
+  }
+
+  /**
+   * @return name of the world this map was enabled for or null if it isn't enabled
+   */
+  String getEnabledWorldName() {
+    DynmapWorld world = enabledWorld;
+    return world != null ? world.getName() : null;
+  }
+
+  /**
+   * @return the index of the tile fingerprints or null if unchanged tiles shouldn't be skipped
+   * (or this map was disabled)
+   */
+  synchronized TileFingerprintIndex getFingerprintIndex(DynmapWorld world) {
+    if (skipUnchangedTiles && fingerprintIndex == null && !disabled) {
+      fingerprintIndex = new TileFingerprintIndex(new File(Platform.getInstance().getDataFolder(),
+          "fingerprints" + File.separator + world.getName() + File.separator + getPrefix()
+              + ".dat"));
+    }
+    return fingerprintIndex;
+  }
+
+  /**
+   * Queue a tile for rendering, using the priority queue if it is enabled. Tiles of disabled maps
+   * are dropped, because the map was replaced.
+   *
+   * @param tile tile to render
+   */
+  void queueTile(ChunkyMapTile tile) {
+    if (disabled) {
+      return;
+    }
+    if (priorityQueue != null) {
+      priorityQueue.add(tile);
+    } else if (MapManager.mapman != null) {
+      MapManager.mapman.tileQueue.push(tile);
+    }
+  }
+
   public boolean getRequeueFailedTiles() {
     return requeueFailedTiles;
   }
@@ -209,6 +466,24 @@ public class ChunkyMap extends HDMap {
     return worldPath;
   }
 
+  /**
+   * Get a Chunky world to load the given chunks from that no other tile is using. It must be
+   * released with {@link #releaseChunkyWorld(World)} once the chunks are loaded.
+   */
+  World acquireChunkyWorld(DynmapWorld world, Collection<ChunkPosition> chunks) {
+    return worldCache.acquire(getWorldFolder(world),
+        ChunkyMapTile.getChunkyDimension(world.getEnvironment()), chunks);
+  }
+
+  void releaseChunkyWorld(World chunkyWorld) {
+    worldCache.release(chunkyWorld);
+  }
+
+  File getRegionFolder(DynmapWorld world) {
+    return ChunkyWorldCache.getRegionFolder(getWorldFolder(world),
+        ChunkyMapTile.getChunkyDimension(world.getEnvironment()));
+  }
+
   private static final ImageVariant[] variants = new ImageVariant[]{ImageVariant.STANDARD};
   @Override
   public ImageVariant[] getVariants() {
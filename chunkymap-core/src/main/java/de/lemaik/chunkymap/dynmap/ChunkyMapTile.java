@@ -1,10 +1,18 @@
 package de.lemaik.chunkymap.dynmap;
 
+import de.lemaik.chunkymap.metrics.RenderMetrics;
+import de.lemaik.chunkymap.metrics.RenderMetrics.Counter;
+import de.lemaik.chunkymap.metrics.RenderMetrics.Stage;
+import de.lemaik.chunkymap.metrics.StageTimer;
+import de.lemaik.chunkymap.metrics.TileRenderEvent;
 import de.lemaik.chunkymap.rendering.FileBufferRenderContext;
+import de.lemaik.chunkymap.rendering.ImageBufferPool;
 import de.lemaik.chunkymap.rendering.Renderer;
 import de.lemaik.chunkymap.rendering.SilentTaskTracker;
 import de.lemaik.chunkymap.rendering.rs.RemoteRenderer;
+import de.lemaik.chunkymap.util.RegionHeader;
 import org.dynmap.Client.Tile;
+import org.dynmap.DynmapChunk;
 import org.dynmap.DynmapWorld;
 import org.dynmap.MapManager;
 import org.dynmap.MapTile;
@@ -21,17 +29,22 @@ import se.llbit.chunky.entity.PlayerEntity;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.chunky.world.ChunkPosition;
 import se.llbit.chunky.world.World;
-import se.llbit.chunky.world.World.LoggedWarnings;
 import se.llbit.log.Log;
 import se.llbit.util.ProgressListener;
 import se.llbit.util.TaskTracker;
 
+import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 public class ChunkyMapTile extends HDMapTile {
@@ -47,7 +60,82 @@ public class ChunkyMapTile extends HDMapTile {
 
   @Override
   public boolean render(MapChunkCache mapChunkCache, String mapName) {
+    ChunkyMap map = (ChunkyMap) world.maps.stream()
+        .filter(m -> m instanceof ChunkyMap && (mapName == null || m.getName().equals(mapName))
+            && ((ChunkyMap) m).getPerspective() == perspective
+            && ((ChunkyMap) m).getBoostZoom() == boostzoom)
+        .findFirst().get();
+    MapLifecycle.enable(map, world);
+    int blockSize = map.getTileBlockSize();
+    if (blockSize > 1 && !(map.getRenderer() instanceof RemoteRenderer)) {
+      return renderBlock(map, blockSize);
+    }
+    return render(map, null, null);
+  }
+
+  /**
+   * Render all tiles of the block of tiles this tile belongs to from a single loaded scene. The
+   * chunks of the block are loaded once and shared with the other tiles of the block directly, so
+   * this doesn't depend on the chunk cache budget. The other tiles of the block are remembered so
+   * that they are skipped when Dynmap wants to render them, unless their chunks changed in the
+   * meantime.
+   */
+  private boolean renderBlock(ChunkyMap map, int blockSize) {
+    IsoHDPerspective perspective = (IsoHDPerspective) this.perspective;
+    Long renderedAt = map.removeTileRenderedInBlock(this);
+    if (renderedAt != null && !hasChangedSince(map, perspective, renderedAt)) {
+      // this tile was already rendered together with another tile of its block
+      RenderMetrics.INSTANCE.increment(Counter.SKIPPED_UNCHANGED);
+      return true;
+    }
+
+    // taken before any region header is read, so that chunks that are saved while the block is
+    // rendered count as changed
+    long startTimestamp = System.currentTimeMillis();
+    int blockX = Math.floorDiv(tx, blockSize) * blockSize;
+    int blockY = Math.floorDiv(ty, blockSize) * blockSize;
+    List<ChunkyMapTile> tiles = new ArrayList<>(blockSize * blockSize);
+    Set<ChunkPosition> chunks = new HashSet<>();
+    for (int x = blockX; x < blockX + blockSize; x++) {
+      for (int y = blockY; y < blockY + blockSize; y++) {
+        ChunkyMapTile tile = x == tx && y == ty ? this
+            : new ChunkyMapTile(world, perspective, x, y, boostzoom, tilescale);
+        if (tile != this && !tile.hasChunks(map, perspective)) {
+          // don't render tiles that Dynmap wouldn't render either
+          continue;
+        }
+        tiles.add(tile);
+        chunks.addAll(tile.getPaddedChunks(perspective, map.getChunkPadding()));
+      }
+    }
+
+    TileBlock block = new TileBlock(chunks);
+    boolean success = true;
+    for (ChunkyMapTile tile : tiles) {
+      if (tile == this) {
+        success = render(map, block, null);
+      } else {
+        tile.render(map, block, () -> map.addTileRenderedInBlock(tile, startTimestamp));
+      }
+    }
+    return success;
+  }
+
+  /**
+   * Render this tile.
+   *
+   * @param map      the map to render this tile for
+   * @param block    block of tiles this tile is rendered with or null to load the chunks required
+   *                 for this tile
+   * @param onStored called once the tile was rendered and stored successfully, which may be after
+   *                 this method returned, or null
+   * @return true if the tile was rendered successfully or is still being rendered or stored
+   */
+  private boolean render(ChunkyMap map, TileBlock block, Runnable onStored) {
     final long startTimestamp = System.currentTimeMillis();
+    final long startNanos = System.nanoTime();
+    TileRenderEvent event = new TileRenderEvent();
+    event.begin();
     IsoHDPerspective perspective = (IsoHDPerspective) this.perspective;
 
     final int scaled = (boostzoom > 0 && MarkerAPIImpl
@@ -55,69 +143,70 @@ public class ChunkyMapTile extends HDMapTile {
             128.0D)) ? boostzoom : 0;
 
     // Mark the tiles we're going to render as validated
-    ChunkyMap map = (ChunkyMap) world.maps.stream()
-        .filter(m -> m instanceof ChunkyMap && (mapName == null || m.getName().equals(mapName))
-            && ((ChunkyMap) m).getPerspective() == perspective
-            && ((ChunkyMap) m).getBoostZoom() == boostzoom)
-        .findFirst().get();
     MapTypeState mts = world.getMapState(map);
     if (mts != null) {
       mts.validateTile(tx, ty);
     }
 
-    FileBufferRenderContext context = new FileBufferRenderContext();
+    TileFingerprintIndex fingerprintIndex = map.getFingerprintIndex(world);
+    Long fingerprint = fingerprintIndex != null
+        ? getFingerprint(map, perspective, scaled, startTimestamp) : null;
+    if (fingerprint != null && fingerprintIndex.matches(tx, ty, fingerprint)
+        && world.getMapStorage().getTile(world, map, tx, ty, 0, ImageVariant.STANDARD).exists()) {
+      // nothing changed since this tile was rendered
+      RenderMetrics.INSTANCE.increment(Counter.SKIPPED_UNCHANGED);
+      if (MapManager.mapman != null) {
+        MapManager.mapman.updateStatistics(this, map.getPrefix(), true, false, false);
+      }
+      commitEvent(event, map, null, scaled, Counter.SKIPPED_UNCHANGED);
+      if (onStored != null) {
+        onStored.run();
+      }
+      return true;
+    }
+
+    FileBufferRenderContext context = map.getRenderContextPool().acquire();
+    context.setTile(map.getName(), tx, ty);
+    boolean releaseContext = true;
     try {
       Renderer renderer = map.getRenderer();
       renderer.setDefaultTexturepack(map.getDefaultTexturepackPath());
-      renderer.render(context, map.getResourcepackPaths(), (scene) -> {
-        World chunkyWorld = World.loadWorld(map.getWorldFolder(world),
-                getChunkyDimension(world.getEnvironment()), LoggedWarnings.SILENT);
+      CompletableFuture<BufferedImage> image = renderer.render(context, map.getResourcepackPaths(), (scene) -> {
         // Bukkit.getScheduler().runTask(ChunkyMapPlugin.getPlugin(ChunkyMapPlugin.class), Bukkit.getWorld(world.getRawName())::save);
         map.applyTemplateScene(scene);
-        scene.setName(tx + "_" + ty);
-        scene.setCanvasSize(128 * (1 << scaled), 128 * (1 << scaled));
-        scene.setTransparentSky(true);
-        scene.setYClipMin((int) perspective.minheight);
-        if (perspective.minheight == -2.147483648E9D) {
-          scene.setYClipMin(world.minY);
-        }
-        scene.setYClipMax((int) perspective.maxheight);
-        if (perspective.maxheight == -2.147483648E9D) {
-          if (world.isNether()) {
-            scene.setYClipMax(127);
-          } else {
-            scene.setYClipMax(world.worldheight - 1);
-          }
-        }
-        map.cameraAdapter.apply(scene.camera(), tx, ty, map.getMapZoomOutLevels(),
-            world.getExtraZoomOutLevels());
+        applyView(scene, map, perspective, scaled);
 
         if (renderer instanceof RemoteRenderer) {
           if (((RemoteRenderer) renderer).shouldInitializeLocally()) {
-              Set<ChunkPosition> chunks = perspective.getRequiredChunks(this).stream()
-                      .flatMap(c -> getChunksAround(c.x, c.z, map.getChunkPadding()).stream())
-                      .collect(Collectors.toSet());
+            Set<ChunkPosition> chunks = getPaddedChunks(perspective, map.getChunkPadding());
             Log.info("loading " + chunks.size() + " chunks");
-              scene.setOctreeImplementation("PACKED");
-            scene.loadChunks(new TaskTracker((task, done, start, target, elapsedTime) -> {
-              Log.info(task + " (" + done + "/" + target + ")");
-            }), chunkyWorld, chunks);
+            scene.setOctreeImplementation("PACKED");
+            World chunkyWorld = map.acquireChunkyWorld(world, chunks);
+            try {
+              StageTimer chunkLoad = context.startStage(Stage.CHUNK_LOAD);
+              scene.loadChunks(new TaskTracker((task, done, start, target, elapsedTime) -> {
+                Log.info(task + " (" + done + "/" + target + ")");
+              }), chunkyWorld, chunks);
+              chunkLoad.stop();
+            } finally {
+              map.releaseChunkyWorld(chunkyWorld);
+            }
             Log.info("loaded " + chunks.size() + " chunks");
             scene.getActors().removeIf(actor -> actor instanceof PlayerEntity);
+            StageTimer octreeBuild = context.startStage(Stage.OCTREE_BUILD);
             try {
               scene.saveScene(context, new TaskTracker(ProgressListener.NONE));
             } catch (IOException e) {
               throw new RuntimeException("Could not save scene", e);
             }
+            octreeBuild.stop();
           } else {
             try {
               Field chunks = Scene.class.getDeclaredField("chunks");
               chunks.setAccessible(true);
               Collection<ChunkPosition> chunksList = (Collection<ChunkPosition>) chunks.get(scene);
               chunksList.clear();
-              chunksList.addAll(perspective.getRequiredChunks(this).stream()
-                  .flatMap(c -> getChunksAround(c.x, c.z, map.getChunkPadding()).stream())
-                  .collect(Collectors.toSet()));
+              chunksList.addAll(getPaddedChunks(perspective, map.getChunkPadding()));
             } catch (ReflectiveOperationException e) {
               throw new RuntimeException("Could not set chunks", e);
             }
@@ -137,51 +226,300 @@ public class ChunkyMapTile extends HDMapTile {
               throw new RuntimeException("Could not save scene", e);
             }
           }
-        } else {
-          Set<ChunkPosition> chunks = perspective.getRequiredChunks(this).stream()
-                  .flatMap(c -> getChunksAround(c.x, c.z, map.getChunkPadding()).stream())
-                  .collect(Collectors.toSet());
-          scene.loadChunks(SilentTaskTracker.INSTANCE, chunkyWorld, chunks);
+        } else if (loadChunks(context, scene, map, perspective, block)) {
+          // the scene state was copied from another scene, including its camera
+          applyView(scene, map, perspective, scaled);
         }
-      }).thenApply((image) -> {
-        MapStorage var52 = world.getMapStorage();
-        MapStorageTile mtile = var52.getTile(world, map, tx, ty, 0, ImageVariant.STANDARD);
-        MapManager mapManager = MapManager.mapman;
-        boolean tileUpdated = false;
-        if (mapManager != null) {
-          DataBufferInt dataBuffer = (DataBufferInt) image.getRaster().getDataBuffer();
-          int[] data = dataBuffer.getData();
-          long crc = MapStorage.calculateImageHashCode(data, 0, data.length);
-          mtile.getWriteLock();
+        event.chunkCount = scene.getChunks().size();
+        event.octreeImplementation = scene.getOctreeImplementation();
+      });
+      TileWriter writer = map.getTileWriter();
+      CompletableFuture<Boolean> result = writer != null
+          ? image.thenCompose(i -> writer.submit(() -> write(map, context, i, startTimestamp, writer)))
+          : image.thenApply(i -> write(map, context, i, startTimestamp, null));
+
+      if (writer != null
+          || renderer instanceof RemoteRenderer && ((RemoteRenderer) renderer).isPipelined()) {
+        // don't wait for the remote render or the write, the context is released once it's done
+        releaseContext = false;
+        result.whenComplete((tileUpdated, e) -> {
           try {
-            if (!mtile.matchesHashCode(crc)) {
-              mtile.write(crc, image, startTimestamp);
-              mapManager.pushUpdate(getDynmapWorld(), new Tile(mtile.getURI()));
-              tileUpdated = true;
+            if (e == null) {
+              if (fingerprint != null) {
+                fingerprintIndex.put(tx, ty, fingerprint);
+              }
+              if (onStored != null) {
+                onStored.run();
+              }
+              context.recordStage(Stage.TILE, System.nanoTime() - startNanos);
+              commitEvent(event, map, context, scaled,
+                  tileUpdated ? Counter.UPDATED : Counter.SKIPPED_BY_HASH);
+            } else {
+              onRenderFailed(map, e);
+              commitEvent(event, map, context, scaled, Counter.FAILED);
             }
           } finally {
-            mtile.releaseWriteLock();
+            map.getRenderContextPool().release(context);
           }
-          mapManager.updateStatistics(this, map.getPrefix(), true, true, false);
-        }
-        return tileUpdated;
-      }).get();
+        });
+        return true;
+      }
+
+      boolean tileUpdated = result.get();
+      if (fingerprint != null) {
+        fingerprintIndex.put(tx, ty, fingerprint);
+      }
+      if (onStored != null) {
+        onStored.run();
+      }
+      context.recordStage(Stage.TILE, System.nanoTime() - startNanos);
+      commitEvent(event, map, context, scaled,
+          tileUpdated ? Counter.UPDATED : Counter.SKIPPED_BY_HASH);
       return true;
     } catch (Exception e) {
-      Log.warn("Rendering tile " + tx + "_" + ty + " failed", e);
+      onRenderFailed(map, e);
+      commitEvent(event, map, context, scaled, Counter.FAILED);
+      return false;
+    } finally {
+      if (releaseContext) {
+        map.getRenderContextPool().release(context);
+      }
+    }
+  }
 
-      if (map.getRequeueFailedTiles()) {
-        // Re-queue the failed tile
-        // Somewhat hacky but works surprisingly well
-        MapManager.mapman.tileQueue.push(this);
+  /**
+   * Store the rendered image of this tile if it differs from the stored one. The image is released
+   * to the {@link ImageBufferPool} afterwards.
+   *
+   * @param writer writer to batch the tile updates with or null to notify Dynmap immediately
+   * @return true if the tile was updated
+   */
+  private boolean write(ChunkyMap map, FileBufferRenderContext context, BufferedImage image,
+      long startTimestamp, TileWriter writer) {
+    try {
+      MapManager mapManager = MapManager.mapman;
+      MapStorage var52 = world.getMapStorage();
+      MapStorageTile mtile = var52.getTile(world, map, tx, ty, 0, ImageVariant.STANDARD);
+      boolean tileUpdated = false;
+      RenderMetrics.INSTANCE.increment(Counter.RENDERED);
+      if (mapManager != null) {
+        StageTimer hash = context.startStage(Stage.HASH);
+        DataBufferInt dataBuffer = (DataBufferInt) image.getRaster().getDataBuffer();
+        int[] data = dataBuffer.getData();
+        long crc = MapStorage.calculateImageHashCode(data, 0, data.length);
+        hash.stop();
+        mtile.getWriteLock();
+        try {
+          if (!mtile.matchesHashCode(crc)) {
+            StageTimer storageWrite = context.startStage(Stage.STORAGE_WRITE);
+            mtile.write(crc, image, startTimestamp);
+            if (writer != null) {
+              writer.pushUpdate(getDynmapWorld(), mtile.getURI());
+            } else {
+              mapManager.pushUpdate(getDynmapWorld(), new Tile(mtile.getURI()));
+            }
+            storageWrite.stop();
+            tileUpdated = true;
+          }
+        } finally {
+          mtile.releaseWriteLock();
+        }
+        RenderMetrics.INSTANCE.increment(tileUpdated ? Counter.UPDATED : Counter.SKIPPED_BY_HASH);
+        mapManager.updateStatistics(this, map.getPrefix(), true, true, false);
+      }
+      return tileUpdated;
+    } finally {
+      ImageBufferPool.INSTANCE.release(image);
+    }
+  }
+
+  private void onRenderFailed(ChunkyMap map, Throwable e) {
+    Log.warn("Rendering tile " + tx + "_" + ty + " failed", e);
+    RenderMetrics.INSTANCE.increment(Counter.FAILED);
+
+    if (map.getRequeueFailedTiles()) {
+      // Re-queue the failed tile
+      // Somewhat hacky but works surprisingly well
+      map.queueTile(this);
+      RenderMetrics.INSTANCE.increment(Counter.REQUEUED);
+    }
+  }
+
+  /**
+   * Commit the JFR event of rendering this tile if it is being recorded.
+   *
+   * @param context context the tile was rendered with, to get the stage durations from, or null
+   *                if the tile wasn't rendered
+   */
+  private void commitEvent(TileRenderEvent event, ChunkyMap map, FileBufferRenderContext context,
+      int scaled, Counter outcome) {
+    event.end();
+    if (!event.shouldCommit()) {
+      return;
+    }
+    event.world = world.getName();
+    event.map = map.getName();
+    event.tileX = tx;
+    event.tileY = ty;
+    event.boostZoom = scaled;
+    event.renderer = map.getRenderer() instanceof RemoteRenderer ? "chunkycloud" : "local";
+    event.outcome = outcome.getName();
+    if (context != null) {
+      event.samplesPerPixel = context.getSamplesPerPixel();
+      for (Stage stage : Stage.values()) {
+        event.setStageDuration(stage, context.getStageNanos(stage));
+      }
+    }
+    event.commit();
+  }
+
+  private void applyView(Scene scene, ChunkyMap map, IsoHDPerspective perspective, int scaled) {
+    scene.setName(tx + "_" + ty);
+    scene.setCanvasSize(128 * (1 << scaled), 128 * (1 << scaled));
+    scene.setTransparentSky(true);
+    scene.setYClipMin((int) perspective.minheight);
+    if (perspective.minheight == -2.147483648E9D) {
+      scene.setYClipMin(world.minY);
+    }
+    scene.setYClipMax((int) perspective.maxheight);
+    if (perspective.maxheight == -2.147483648E9D) {
+      if (world.isNether()) {
+        scene.setYClipMax(127);
+      } else {
+        scene.setYClipMax(world.worldheight - 1);
+      }
+    }
+    map.cameraAdapter.apply(scene.camera(), tx, ty, map.getMapZoomOutLevels(),
+        world.getExtraZoomOutLevels());
+  }
+
+  /**
+   * Load the chunks required for this tile into the scene, re-using the chunks of the other tiles
+   * of the block or of a cached scene if possible.
+   *
+   * @param block block of tiles this tile is rendered with or null to load the required chunks
+   *              and the cache margin
+   * @return true if the scene state was copied from another scene, false if the chunks were
+   * loaded
+   */
+  private boolean loadChunks(FileBufferRenderContext context, Scene scene, ChunkyMap map,
+      IsoHDPerspective perspective, TileBlock block) {
+    if (block != null && block.scene != null) {
+      scene.copyState(block.scene, true);
+      return true;
+    }
+
+    Set<ChunkPosition> chunks = block != null ? block.chunks
+        : getPaddedChunks(perspective, map.getChunkPadding());
+    LoadedChunkCache cache = map.getChunkCache();
+    if (cache == null) {
+      loadChunks(context, scene, map, chunks);
+      if (block != null) {
+        block.scene = scene;
       }
       return false;
+    }
+
+    File regionFolder = map.getRegionFolder(world);
+    Scene cached = cache.get(regionFolder, chunks);
+    if (cached != null) {
+      scene.copyState(cached, true);
+      if (block != null) {
+        block.scene = cached;
+      }
+      return true;
+    }
+
+    if (block == null) {
+      // load some more chunks so that the neighbouring tiles can use them, too
+      chunks = getPaddedChunks(perspective, map.getChunkPadding() + map.getChunkCacheMargin());
+    }
+    Map<ChunkPosition, Integer> timestamps = cache.getTimestamps(regionFolder, chunks);
+    loadChunks(context, scene, map, chunks);
+    if (block != null) {
+      block.scene = scene;
+    }
+    cache.put(regionFolder, scene, timestamps);
+    return false;
+  }
+
+  private void loadChunks(FileBufferRenderContext context, Scene scene, ChunkyMap map,
+      Set<ChunkPosition> chunks) {
+    World chunkyWorld = map.acquireChunkyWorld(world, chunks);
+    try {
+      StageTimer chunkLoad = context.startStage(Stage.CHUNK_LOAD);
+      scene.loadChunks(SilentTaskTracker.INSTANCE, chunkyWorld, chunks);
+      chunkLoad.stop();
     } finally {
-      context.dispose();
+      map.releaseChunkyWorld(chunkyWorld);
+    }
+  }
+
+  /**
+   * @return fingerprint of the inputs of this tile or null if it could not be computed or if a
+   * chunk might still change without changing its timestamp
+   */
+  private Long getFingerprint(ChunkyMap map, IsoHDPerspective perspective, int scaled,
+      long timestamp) {
+    // same as in hasChangedSince, a chunk that was saved in the same second or the second before
+    // might be saved again with the same timestamp after it is loaded
+    long seconds = timestamp / 1000 - 1;
+    try {
+      Map<ChunkPosition, Integer> timestamps = RegionHeader.readTimestamps(
+          map.getRegionFolder(world), getPaddedChunks(perspective, map.getChunkPadding()));
+      if (timestamps.values().stream().anyMatch(t -> t >= seconds)) {
+        return null;
+      }
+      return TileFingerprintIndex.getFingerprint(map.getFingerprint(world), tx, ty, scaled,
+          timestamps);
+    } catch (IOException e) {
+      Log.warn("Could not read region headers, rendering tile " + tx + "_" + ty, e);
+      return null;
     }
   }
 
-  private static int getChunkyDimension(String environment) {
+  /**
+   * @return true if any of the chunks required for this tile exists
+   */
+  private boolean hasChunks(ChunkyMap map, IsoHDPerspective perspective) {
+    try {
+      return RegionHeader.readTimestamps(map.getRegionFolder(world),
+              getPaddedChunks(perspective, 0)).values().stream().anyMatch(t -> t != 0);
+    } catch (IOException e) {
+      return true;
+    }
+  }
+
+  /**
+   * @return true if any of the chunks of this tile may have changed since the given time
+   */
+  private boolean hasChangedSince(ChunkyMap map, IsoHDPerspective perspective, long timestamp) {
+    // chunk timestamps only have a resolution of one second, so chunks that were saved in the
+    // same second or the second before might have been saved after the given time
+    long seconds = timestamp / 1000 - 1;
+    try {
+      return RegionHeader.readTimestamps(map.getRegionFolder(world),
+              getPaddedChunks(perspective, map.getChunkPadding())).values().stream()
+          .anyMatch(t -> t >= seconds);
+    } catch (IOException e) {
+      return true;
+    }
+  }
+
+  private Set<ChunkPosition> getPaddedChunks(IsoHDPerspective perspective, int padding) {
+    return getPaddedChunks(perspective.getRequiredChunks(this), padding);
+  }
+
+  /**
+   * @return the given chunks and all chunks within the given padding around them
+   */
+  static Set<ChunkPosition> getPaddedChunks(Collection<DynmapChunk> chunks, int padding) {
+    return chunks.stream()
+        .flatMap(c -> getChunksAround(c.x, c.z, padding).stream())
+        .collect(Collectors.toSet());
+  }
+
+  static int getChunkyDimension(String environment) {
     switch (environment) {
       case "nether":
         return World.NETHER_DIMENSION;
@@ -255,4 +593,18 @@ public class ChunkyMapTile extends HDMapTile {
   protected String saveTileData() {
     return String.format("%d,%d,%s,%d", this.tx, this.ty, this.perspective.getName(), this.boostzoom);
   }
+
+  /**
+   * The chunks of a block of tiles and the scene they were loaded into by the first tile of the
+   * block that was rendered.
+   */
+  private static class TileBlock {
+
+    private final Set<ChunkPosition> chunks;
+    private Scene scene;
+
+    private TileBlock(Set<ChunkPosition> chunks) {
+      this.chunks = chunks;
+    }
+  }
 }
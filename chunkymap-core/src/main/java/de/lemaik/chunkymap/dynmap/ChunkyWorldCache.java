@@ -0,0 +1,153 @@
+package de.lemaik.chunkymap.dynmap;
+
+import de.lemaik.chunkymap.metrics.RenderMetrics;
+import de.lemaik.chunkymap.metrics.RenderMetrics.Stage;
+import de.lemaik.chunkymap.metrics.StageTimer;
+import se.llbit.chunky.world.ChunkPosition;
+import se.llbit.chunky.world.RegionPosition;
+import se.llbit.chunky.world.World;
+import se.llbit.chunky.world.World.LoggedWarnings;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Caches loaded Chunky worlds so that tiles don't need to re-read the level.dat and rebuild the
+ * region bookkeeping on every render. Cached worlds are reloaded if the level.dat changed. A
+ * world keeps the headers of the regions it read, so a cached world is also dropped if one of the
+ * regions that a tile needs changed since the world was last used for that region. Only the
+ * region files of the tile are checked, so writes to other regions don't affect the cache.
+ * <p>
+ * Chunky's worlds are not thread-safe (they load and keep their regions lazily), so every world
+ * is only used by one tile at a time. Tiles that are rendered concurrently get their own
+ * world and release it once their chunks are loaded.
+ */
+class ChunkyWorldCache {
+
+  private final Map<String, Entry> worlds = new HashMap<>();
+  private final Map<World, CachedWorld> acquiredWorlds = new IdentityHashMap<>();
+
+  /**
+   * Get a Chunky world for the given world folder and dimension that no other tile is using,
+   * loading it if there is none that is up to date for the given chunks. The world must be
+   * released with {@link #release(World)} after loading the chunks.
+   *
+   * @param worldFolder world folder
+   * @param dimension   Chunky dimension id
+   * @param chunks      chunks that will be loaded from the world
+   * @return the loaded world
+   */
+  World acquire(File worldFolder, int dimension, Collection<ChunkPosition> chunks) {
+    String key = worldFolder.getAbsolutePath() + ":" + dimension;
+    // the files are checked outside the lock so that tiles don't wait for each other
+    long levelDatModified = new File(worldFolder, "level.dat").lastModified();
+    File regionFolder = getRegionFolder(worldFolder, dimension);
+    Map<RegionPosition, Long> regions = new HashMap<>();
+    for (ChunkPosition chunk : chunks) {
+      RegionPosition region = chunk.getRegionPosition();
+      if (!regions.containsKey(region)) {
+        regions.put(region, new File(regionFolder, region.getMcaName()).lastModified());
+      }
+    }
+
+    Entry entry;
+    synchronized (this) {
+      entry = worlds.get(key);
+      if (entry == null || entry.levelDatModified != levelDatModified) {
+        entry = new Entry(levelDatModified);
+        worlds.put(key, entry);
+      }
+      Iterator<CachedWorld> idleWorlds = entry.idleWorlds.iterator();
+      while (idleWorlds.hasNext()) {
+        CachedWorld cached = idleWorlds.next();
+        idleWorlds.remove();
+        // a world that read an older version of one of the regions is dropped
+        if (!cached.isOutdated(regions)) {
+          cached.regions.putAll(regions);
+          acquiredWorlds.put(cached.world, cached);
+          return cached.world;
+        }
+      }
+    }
+
+    StageTimer timer = RenderMetrics.INSTANCE.startStage(Stage.WORLD_OPEN);
+    World world = World.loadWorld(worldFolder, dimension, LoggedWarnings.SILENT);
+    timer.stop();
+    synchronized (this) {
+      acquiredWorlds.put(world, new CachedWorld(entry, world, regions));
+    }
+    return world;
+  }
+
+  /**
+   * Release a world that was acquired with {@link #acquire(File, int, Collection)} so that the
+   * next tile can use it. Worlds whose level.dat changed in the meantime are dropped.
+   *
+   * @param world world to release
+   */
+  synchronized void release(World world) {
+    CachedWorld cached = acquiredWorlds.remove(world);
+    if (cached != null && worlds.containsValue(cached.entry)) {
+      cached.entry.idleWorlds.offerFirst(cached);
+    }
+  }
+
+  static File getRegionFolder(File worldFolder, int dimension) {
+    if (dimension == World.NETHER_DIMENSION) {
+      return new File(new File(worldFolder, "DIM-1"), "region");
+    } else if (dimension == World.END_DIMENSION) {
+      return new File(new File(worldFolder, "DIM1"), "region");
+    }
+    return new File(worldFolder, "region");
+  }
+
+  private static class Entry {
+
+    private final long levelDatModified;
+    /**
+     * Worlds that are not used by any tile. There are at most as many as tiles were rendered
+     * concurrently.
+     */
+    private final Deque<CachedWorld> idleWorlds = new ArrayDeque<>();
+
+    private Entry(long levelDatModified) {
+      this.levelDatModified = levelDatModified;
+    }
+  }
+
+  private static class CachedWorld {
+
+    private final Entry entry;
+    private final World world;
+    /**
+     * Modification times of the region files that the world was used for, as they were when it
+     * was acquired.
+     */
+    private final Map<RegionPosition, Long> regions;
+
+    private CachedWorld(Entry entry, World world, Map<RegionPosition, Long> regions) {
+      this.entry = entry;
+      this.world = world;
+      this.regions = new HashMap<>(regions);
+    }
+
+    /**
+     * @return true if one of the given regions changed since the world read it
+     */
+    private boolean isOutdated(Map<RegionPosition, Long> current) {
+      for (Map.Entry<RegionPosition, Long> region : current.entrySet()) {
+        Long lastModified = regions.get(region.getKey());
+        if (lastModified != null && !lastModified.equals(region.getValue())) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package de.lemaik.chunkymap.dynmap;
+
+import de.lemaik.chunkymap.util.RegionHeader;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.chunky.world.ChunkPosition;
+import se.llbit.log.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A least-recently-used cache of scenes with loaded chunks. Neighbouring tiles require mostly the
+ * same chunks, so a scene that was loaded for one tile (plus a margin) can be re-used for the
+ * next tiles instead of loading and parsing the chunks again.
+ * <p>
+ * Chunky parses chunks directly into the palette and octree of a scene, so the parsed chunks
+ * can't be shared between scenes individually. Instead, whole loaded scenes are kept and their
+ * octrees are shared with {@link Scene#copyState(Scene, boolean)}. The memory budget is the total
+ * number of chunks of all cached scenes plus the size of their render buffers, which the cached
+ * scenes keep as well. An entry is invalidated as soon as the timestamp of any of its chunks in
+ * the region file header changes.
+ * <p>
+ * A cached scene may contain more chunks than a tile requires, e.g. the chunks of the cache margin
+ * or of a whole tile block. These chunks are rendered, too, so their shadows and light end up in
+ * the tile and the pixels of a tile depend on which scene it happened to be rendered from. A
+ * margin trades this determinism for more cache hits. Tile blocks do the same, their tiles are
+ * rendered from a scene with the chunks of the whole block.
+ */
+class LoadedChunkCache {
+
+  private final int maxChunks;
+  private final long maxBufferBytes;
+  private final LinkedList<Entry> entries = new LinkedList<>();
+  private int cachedChunks = 0;
+  private long cachedBufferBytes = 0;
+
+  /**
+   * @param maxChunks      maximum number of chunks of all cached scenes
+   * @param maxBufferBytes maximum size of the render buffers of all cached scenes, in bytes
+   */
+  LoadedChunkCache(int maxChunks, long maxBufferBytes) {
+    this.maxChunks = maxChunks;
+    this.maxBufferBytes = maxBufferBytes;
+  }
+
+  /**
+   * Get a cached scene that contains all the given chunks in their current version. The region
+   * headers are read without holding the lock, so tiles don't wait for each other's disk reads.
+   *
+   * @param regionFolder region folder of the dimension
+   * @param chunks       required chunks
+   * @return a scene with the chunks loaded or null if there is none
+   */
+  Scene get(File regionFolder, Collection<ChunkPosition> chunks) {
+    Entry candidate = null;
+    synchronized (this) {
+      for (Entry entry : entries) {
+        if (entry.regionFolder.equals(regionFolder) && entry.timestamps.keySet()
+            .containsAll(chunks)) {
+          candidate = entry;
+          break;
+        }
+      }
+    }
+    if (candidate == null) {
+      return null;
+    }
+
+    boolean valid;
+    try {
+      valid = RegionHeader.readTimestamps(regionFolder, candidate.timestamps.keySet())
+          .equals(candidate.timestamps);
+    } catch (IOException e) {
+      Log.warn("Could not read region headers, not using cached chunks", e);
+      valid = false;
+    }
+
+    synchronized (this) {
+      boolean cached = entries.remove(candidate);
+      if (!valid) {
+        if (cached) {
+          cachedChunks -= candidate.timestamps.size();
+          cachedBufferBytes -= candidate.bufferBytes;
+        }
+        return null;
+      }
+      if (cached) {
+        entries.addFirst(candidate);
+      }
+      // a scene that was evicted in the meantime is still valid, it is just not cached anymore
+      return candidate.scene;
+    }
+  }
+
+  /**
+   * Read the current timestamps of the given chunks. This should be done right before loading
+   * the chunks so that changes that happen while loading invalidate the cached scene.
+   *
+   * @param regionFolder region folder of the dimension
+   * @param chunks       chunks that will be loaded
+   * @return timestamps of the chunks or null if they could not be read
+   */
+  Map<ChunkPosition, Integer> getTimestamps(File regionFolder, Set<ChunkPosition> chunks) {
+    try {
+      return RegionHeader.readTimestamps(regionFolder, chunks);
+    } catch (IOException e) {
+      Log.warn("Could not read region headers, not caching the loaded chunks", e);
+      return null;
+    }
+  }
+
+  /**
+   * Add a scene with loaded chunks to the cache, evicting the least recently used scenes if the
+   * budget is exceeded. A scene that exceeds the budget on its own replaces all other scenes.
+   *
+   * @param regionFolder region folder of the dimension
+   * @param scene        scene with the chunks loaded
+   * @param timestamps   timestamps of the loaded chunks before loading them
+   */
+  synchronized void put(File regionFolder, Scene scene, Map<ChunkPosition, Integer> timestamps) {
+    if (timestamps == null) {
+      return;
+    }
+    Entry entry = new Entry(regionFolder, scene, timestamps, getBufferBytes(scene));
+    while ((cachedChunks + timestamps.size() > maxChunks
+        || cachedBufferBytes + entry.bufferBytes > maxBufferBytes) && !entries.isEmpty()) {
+      Entry evicted = entries.removeLast();
+      cachedChunks -= evicted.timestamps.size();
+      cachedBufferBytes -= evicted.bufferBytes;
+    }
+    entries.addFirst(entry);
+    cachedChunks += timestamps.size();
+    cachedBufferBytes += entry.bufferBytes;
+  }
+
+  /**
+   * @return estimated size of the render buffers of the scene, i.e. the samples, the front and
+   * back buffer and the alpha channel
+   */
+  private static long getBufferBytes(Scene scene) {
+    long pixels = (long) scene.canvasConfig.getWidth() * scene.canvasConfig.getHeight();
+    return (long) scene.getSampleBuffer().length * Double.BYTES
+        + pixels * (2 * Integer.BYTES + Byte.BYTES);
+  }
+
+  private static class Entry {
+
+    private final File regionFolder;
+    private final Scene scene;
+    private final Map<ChunkPosition, Integer> timestamps;
+    private final long bufferBytes;
+
+    private Entry(File regionFolder, Scene scene, Map<ChunkPosition, Integer> timestamps,
+        long bufferBytes) {
+      this.regionFolder = regionFolder;
+      this.scene = scene;
+      this.timestamps = timestamps;
+      this.bufferBytes = bufferBytes;
+    }
+  }
+}
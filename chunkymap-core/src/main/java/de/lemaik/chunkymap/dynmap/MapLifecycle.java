@@ -0,0 +1,117 @@
+package de.lemaik.chunkymap.dynmap;
+
+import de.lemaik.chunkymap.rendering.rs.ApiClient;
+import org.dynmap.DynmapCommonAPI;
+import org.dynmap.DynmapCommonAPIListener;
+import org.dynmap.DynmapCore;
+import org.dynmap.DynmapWorld;
+import org.dynmap.Event;
+import org.dynmap.MapType;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Enables and disables the background tasks of the maps. Dynmap creates new maps whenever it is
+ * (re-)loaded but never tells the old ones, so a map is enabled once its world is activated (or
+ * when it renders its first tile) and all maps are disabled when Dynmap's API or ChunkyMap is
+ * disabled. Enabling a map also disables the map it replaces.
+ */
+public class MapLifecycle {
+
+  private static final Set<ChunkyMap> enabledMaps = ConcurrentHashMap.newKeySet();
+  private static WeakReference<DynmapCore> watchedCore = new WeakReference<>(null);
+
+  private MapLifecycle() {
+  }
+
+  /**
+   * Enable the maps of all worlds that the given Dynmap instance activates from now on.
+   *
+   * @param core Dynmap instance
+   */
+  static synchronized void watch(DynmapCore core) {
+    if (watchedCore.get() == core) {
+      return;
+    }
+    watchedCore = new WeakReference<>(core);
+    core.events.addListener("worldactivated", new Event.Listener<DynmapWorld>() {
+      @Override
+      public void triggered(DynmapWorld world) {
+        for (MapType map : world.maps) {
+          if (map instanceof ChunkyMap) {
+            enable((ChunkyMap) map, world);
+          }
+        }
+      }
+    });
+    ApiListener.register();
+  }
+
+  /**
+   * Enable the given map, unless it was enabled or disabled before.
+   *
+   * @param map   map to enable
+   * @param world world the map belongs to
+   */
+  static void enable(ChunkyMap map, DynmapWorld world) {
+    if (map.isEnabled() || map.isDisabled()) {
+      return;
+    }
+    synchronized (MapLifecycle.class) {
+      if (map.isEnabled() || map.isDisabled()) {
+        return;
+      }
+      for (ChunkyMap enabled : new ArrayList<>(enabledMaps)) {
+        if (enabled.getPrefix().equals(map.getPrefix())
+            && world.getName().equals(enabled.getEnabledWorldName())) {
+          // the map was replaced because Dynmap or the world was reloaded
+          enabledMaps.remove(enabled);
+          enabled.disable();
+        }
+      }
+      map.enable(world);
+      enabledMaps.add(map);
+    }
+  }
+
+  /**
+   * Disable all maps. This stops their background tasks and saves their state and the region
+   * hashes of ChunkyCloud uploads. Called when Dynmap's API or ChunkyMap is disabled.
+   */
+  public static void disableAll() {
+    List<ChunkyMap> maps;
+    synchronized (MapLifecycle.class) {
+      maps = new ArrayList<>(enabledMaps);
+      enabledMaps.clear();
+    }
+    for (ChunkyMap map : maps) {
+      map.disable();
+    }
+    ApiClient.closeRegionHashes();
+  }
+
+  private static class ApiListener extends DynmapCommonAPIListener {
+
+    private static boolean registered = false;
+
+    private static void register() {
+      if (!registered) {
+        registered = true;
+        DynmapCommonAPIListener.register(new ApiListener());
+      }
+    }
+
+    @Override
+    public void apiEnabled(DynmapCommonAPI api) {
+    }
+
+    @Override
+    public void apiDisabled(DynmapCommonAPI api) {
+      disableAll();
+    }
+  }
+}
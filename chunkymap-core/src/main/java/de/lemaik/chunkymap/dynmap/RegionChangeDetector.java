@@ -0,0 +1,134 @@
+package de.lemaik.chunkymap.dynmap;
+
+import de.lemaik.chunkymap.util.RegionHeader;
+import org.dynmap.DynmapWorld;
+import org.dynmap.utils.TileFlags;
+import se.llbit.log.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically scans the region file headers of a world for chunks with new timestamps and queues
+ * only the tiles of a map that are rendered from those chunks, including the chunk padding.
+ * <p>
+ * The first scan only records the current timestamps. Regions are only read again if their file
+ * was modified since the last scan.
+ */
+class RegionChangeDetector {
+
+  private static final ScheduledExecutorService scanExecutor = Executors
+      .newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ChunkyMap region change detector");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private final ChunkyMap map;
+  private final DynmapWorld world;
+  private final Map<String, Region> regions = new HashMap<>();
+  private boolean initialized = false;
+
+  RegionChangeDetector(ChunkyMap map, DynmapWorld world) {
+    this.map = map;
+    this.world = world;
+  }
+
+  /**
+   * Start scanning periodically.
+   *
+   * @param intervalSeconds seconds between two scans
+   * @return the scheduled scans, to be cancelled when the map is disabled
+   */
+  ScheduledFuture<?> start(int intervalSeconds) {
+    return scanExecutor.scheduleWithFixedDelay(() -> {
+      try {
+        scan();
+      } catch (Exception e) {
+        Log.warn("Scanning for changed chunks failed", e);
+      }
+    }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+  }
+
+  private void scan() throws IOException {
+    File[] regionFiles = map.getRegionFolder(world).listFiles((dir, name) -> name.endsWith(".mca"));
+    if (regionFiles == null) {
+      return;
+    }
+
+    Set<Long> queuedTiles = new HashSet<>();
+    for (File regionFile : regionFiles) {
+      Region previous = regions.get(regionFile.getName());
+      if (previous != null && previous.lastModified == regionFile.lastModified()) {
+        continue;
+      }
+      int[] coordinates = parseRegionCoordinates(regionFile.getName());
+      if (coordinates == null) {
+        continue;
+      }
+
+      Region current = new Region(regionFile.lastModified(), RegionHeader.read(regionFile));
+      regions.put(regionFile.getName(), current);
+      if (!initialized) {
+        continue;
+      }
+      for (int z = 0; z < 32; z++) {
+        for (int x = 0; x < 32; x++) {
+          int timestamp = current.header.getTimestamp(x, z);
+          if (timestamp != 0
+              && (previous == null || previous.header.getTimestamp(x, z) != timestamp)) {
+            queueTiles(coordinates[0] * 32 + x, coordinates[1] * 32 + z, queuedTiles);
+          }
+        }
+      }
+    }
+    if (initialized && !queuedTiles.isEmpty()) {
+      Log.info("Queued " + queuedTiles.size() + " tiles of " + map.getName()
+          + " because of changed chunks");
+    }
+    initialized = true;
+  }
+
+  private void queueTiles(int chunkX, int chunkZ, Set<Long> queuedTiles) {
+    int padding = map.getChunkPadding() * 16;
+    for (TileFlags.TileCoord coord : map.getPerspective().getTileCoords(world,
+        chunkX * 16 - padding, world.minY, chunkZ * 16 - padding,
+        chunkX * 16 + 15 + padding, world.worldheight - 1, chunkZ * 16 + 15 + padding)) {
+      if (queuedTiles.add(((long) coord.x << 32) | (coord.y & 0xFFFFFFFFL))) {
+        map.queueTile(new ChunkyMapTile(world, map.getPerspective(), coord.x, coord.y,
+            map.getBoostZoom(), map.getTileScale()));
+      }
+    }
+  }
+
+  private static int[] parseRegionCoordinates(String fileName) {
+    String[] parts = fileName.split("\\.");
+    if (parts.length != 4 || !parts[0].equals("r")) {
+      return null;
+    }
+    try {
+      return new int[]{Integer.parseInt(parts[1]), Integer.parseInt(parts[2])};
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static class Region {
+
+    private final long lastModified;
+    private final RegionHeader header;
+
+    private Region(long lastModified, RegionHeader header) {
+      this.lastModified = lastModified;
+      this.header = header;
+    }
+  }
+}
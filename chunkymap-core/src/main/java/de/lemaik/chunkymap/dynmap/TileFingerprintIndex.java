@@ -0,0 +1,160 @@
+package de.lemaik.chunkymap.dynmap;
+
+import se.llbit.chunky.world.ChunkPosition;
+import se.llbit.log.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A persistent index of the inputs that every tile of a map was rendered from. The inputs of a
+ * tile are summarized as a fingerprint of the map configuration and the timestamps of all chunks
+ * the tile is rendered from. If the fingerprint of a tile didn't change since it was rendered, the
+ * tile doesn't need to be rendered again.
+ */
+class TileFingerprintIndex {
+
+  private static final ScheduledExecutorService saveExecutor = Executors
+      .newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ChunkyMap fingerprint index");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private final File file;
+  private final Map<Long, Long> fingerprints = new ConcurrentHashMap<>();
+  private volatile boolean dirty = false;
+  private final ScheduledFuture<?> saveTask;
+
+  TileFingerprintIndex(File file) {
+    this.file = file;
+    if (file.isFile()) {
+      try (DataInputStream in = new DataInputStream(
+          new BufferedInputStream(new FileInputStream(file)))) {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+          fingerprints.put(in.readLong(), in.readLong());
+        }
+      } catch (IOException e) {
+        Log.warn("Could not read the tile fingerprints from " + file
+            + ", all tiles will be rendered again", e);
+        fingerprints.clear();
+      }
+    }
+    saveTask = saveExecutor.scheduleWithFixedDelay(this::save, 30, 30, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Stop saving this index periodically and save it one last time.
+   */
+  void close() {
+    saveTask.cancel(false);
+    save();
+  }
+
+  /**
+   * @return true if the given tile was rendered from inputs with the given fingerprint
+   */
+  boolean matches(int tx, int ty, long fingerprint) {
+    Long previous = fingerprints.get(getKey(tx, ty));
+    return previous != null && previous == fingerprint;
+  }
+
+  /**
+   * Remember that the given tile was rendered from inputs with the given fingerprint.
+   */
+  void put(int tx, int ty, long fingerprint) {
+    Long previous = fingerprints.put(getKey(tx, ty), fingerprint);
+    if (previous == null || previous != fingerprint) {
+      dirty = true;
+    }
+  }
+
+  private synchronized void save() {
+    if (!dirty) {
+      return;
+    }
+    dirty = false;
+    try {
+      file.getParentFile().mkdirs();
+      File tempFile = new File(file.getPath() + ".tmp");
+      List<Map.Entry<Long, Long>> entries = new ArrayList<>(fingerprints.entrySet());
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+        out.writeInt(entries.size());
+        for (Map.Entry<Long, Long> entry : entries) {
+          out.writeLong(entry.getKey());
+          out.writeLong(entry.getValue());
+        }
+      }
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      dirty = true;
+      Log.warn("Could not save the tile fingerprints to " + file, e);
+    }
+  }
+
+  /**
+   * Compute the fingerprint of the inputs of a tile.
+   *
+   * @param mapFingerprint fingerprint of the map configuration, see {@link #hash(String)}
+   * @param tx             tile x coordinate
+   * @param ty             tile y coordinate
+   * @param scale          boost zoom level the tile is rendered with
+   * @param timestamps     timestamps of all chunks the tile is rendered from
+   * @return fingerprint of the tile
+   */
+  static long getFingerprint(long mapFingerprint, int tx, int ty, int scale,
+      Map<ChunkPosition, Integer> timestamps) {
+    List<Map.Entry<ChunkPosition, Integer>> chunks = new ArrayList<>(timestamps.entrySet());
+    chunks.sort(Comparator.<Map.Entry<ChunkPosition, Integer>>comparingInt(e -> e.getKey().x)
+        .thenComparingInt(e -> e.getKey().z));
+    ByteBuffer buffer = ByteBuffer.allocate(20 + chunks.size() * 12);
+    buffer.putLong(mapFingerprint).putInt(tx).putInt(ty).putInt(scale);
+    for (Map.Entry<ChunkPosition, Integer> chunk : chunks) {
+      buffer.putInt(chunk.getKey().x).putInt(chunk.getKey().z).putInt(chunk.getValue());
+    }
+    return hash(buffer.array());
+  }
+
+  /**
+   * @return a 64 bit hash of the given string
+   */
+  static long hash(String value) {
+    return hash(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static long hash(byte[] data) {
+    try {
+      return ByteBuffer.wrap(MessageDigest.getInstance("MD5").digest(data)).getLong();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 is not supported", e);
+    }
+  }
+
+  private static long getKey(int tx, int ty) {
+    return ((long) tx << 32) | (ty & 0xFFFFFFFFL);
+  }
+}
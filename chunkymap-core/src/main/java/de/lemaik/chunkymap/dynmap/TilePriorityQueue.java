@@ -0,0 +1,175 @@
+package de.lemaik.chunkymap.dynmap;
+
+import org.dynmap.DynmapCore;
+import org.dynmap.DynmapLocation;
+import org.dynmap.DynmapWorld;
+import org.dynmap.MapManager;
+import org.dynmap.common.DynmapPlayer;
+import org.dynmap.utils.TileFlags;
+import se.llbit.log.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Holds back tiles that ChunkyMap queues itself (failed tiles and tiles of changed chunks) and
+ * feeds them to Dynmap's tile queue by priority, a few at a time. Tiles close to online players
+ * come first. Waiting tiles gain priority over time so that remote tiles are rendered eventually.
+ */
+class TilePriorityQueue {
+
+  private static final ScheduledExecutorService feedExecutor = Executors
+      .newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ChunkyMap tile priority queue");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private final DynmapCore core;
+  private final ChunkyMap map;
+  private final int maxQueuedTiles;
+  private final double tilesPerMinute;
+  private final Map<ChunkyMapTile, Long> pendingTiles = new HashMap<>();
+
+  /**
+   * @param maxQueuedTiles maximum size of Dynmap's tile queue up to which tiles are fed to it
+   * @param tilesPerMinute distance to the closest player (in tiles) that a waiting tile makes up
+   *                       for every minute it waits
+   */
+  TilePriorityQueue(DynmapCore core, ChunkyMap map, int maxQueuedTiles, double tilesPerMinute) {
+    this.core = core;
+    this.map = map;
+    this.maxQueuedTiles = maxQueuedTiles;
+    this.tilesPerMinute = tilesPerMinute;
+  }
+
+  /**
+   * Start feeding tiles to Dynmap's tile queue every second.
+   *
+   * @return the scheduled feeding, to be cancelled when the map is disabled
+   */
+  ScheduledFuture<?> start() {
+    return feedExecutor.scheduleWithFixedDelay(() -> {
+      try {
+        feed();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (Exception e) {
+        Log.warn("Queueing tiles failed", e);
+      }
+    }, 1, 1, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Add a tile to this queue. Tiles that are already waiting keep their age.
+   *
+   * @param tile tile to render
+   */
+  synchronized void add(ChunkyMapTile tile) {
+    pendingTiles.putIfAbsent(tile, System.currentTimeMillis());
+  }
+
+  private void feed() throws InterruptedException {
+    MapManager mapManager = MapManager.mapman;
+    if (mapManager == null) {
+      return;
+    }
+    int freeSlots = maxQueuedTiles - mapManager.tileQueue.size();
+    if (freeSlots <= 0) {
+      return;
+    }
+    synchronized (this) {
+      if (pendingTiles.isEmpty()) {
+        return;
+      }
+    }
+
+    List<DynmapLocation> players = getPlayerLocationsFromServerThread();
+    List<ChunkyMapTile> tiles;
+    synchronized (this) {
+      long now = System.currentTimeMillis();
+      Map<DynmapWorld, List<TileFlags.TileCoord>> playerTiles = new HashMap<>();
+      Map<ChunkyMapTile, Double> priorities = new HashMap<>();
+      for (Map.Entry<ChunkyMapTile, Long> entry : pendingTiles.entrySet()) {
+        ChunkyMapTile tile = entry.getKey();
+        double waitingMinutes = (now - entry.getValue()) / 60000.0;
+        priorities.put(tile, getDistanceToPlayers(tile, playerTiles.computeIfAbsent(
+            tile.getDynmapWorld(), world -> getPlayerTiles(world, players)))
+            - waitingMinutes * tilesPerMinute);
+      }
+      tiles = new ArrayList<>(pendingTiles.keySet());
+      tiles.sort(Comparator.comparingDouble(priorities::get));
+      tiles = new ArrayList<>(tiles.subList(0, Math.min(freeSlots, tiles.size())));
+      tiles.forEach(pendingTiles::remove);
+    }
+    for (ChunkyMapTile tile : tiles) {
+      mapManager.tileQueue.push(tile);
+    }
+  }
+
+  private static double getDistanceToPlayers(ChunkyMapTile tile,
+      List<TileFlags.TileCoord> playerTiles) {
+    if (playerTiles.isEmpty()) {
+      return 0;
+    }
+    int distance = Integer.MAX_VALUE;
+    for (TileFlags.TileCoord playerTile : playerTiles) {
+      distance = Math.min(distance,
+          Math.max(Math.abs(playerTile.x - tile.tx), Math.abs(playerTile.y - tile.ty)));
+    }
+    return distance;
+  }
+
+  /**
+   * @return the locations of all online players or an empty list if the server thread didn't
+   * provide them in time
+   */
+  private List<DynmapLocation> getPlayerLocationsFromServerThread() throws InterruptedException {
+    try {
+      // players may only be accessed from the server thread
+      return core.getServer().callSyncMethod(this::getPlayerLocations).get(10, TimeUnit.SECONDS);
+    } catch (ExecutionException | TimeoutException e) {
+      Log.warn("Could not get the player locations, queueing tiles by age only", e);
+      return Collections.emptyList();
+    }
+  }
+
+  /**
+   * @return the locations of all online players, must be called on the server thread
+   */
+  private List<DynmapLocation> getPlayerLocations() {
+    List<DynmapLocation> locations = new ArrayList<>();
+    for (DynmapPlayer player : core.getServer().getOnlinePlayers()) {
+      DynmapLocation location = player.getLocation();
+      if (location != null) {
+        locations.add(location);
+      }
+    }
+    return locations;
+  }
+
+  private List<TileFlags.TileCoord> getPlayerTiles(DynmapWorld world,
+      List<DynmapLocation> players) {
+    List<TileFlags.TileCoord> tiles = new ArrayList<>();
+    for (DynmapLocation location : players) {
+      if (!world.getName().equals(location.world)) {
+        continue;
+      }
+      int x = (int) Math.floor(location.x);
+      int y = (int) Math.floor(location.y);
+      int z = (int) Math.floor(location.z);
+      tiles.addAll(map.getPerspective().getTileCoords(world, x, y, z, x, y, z));
+    }
+    return tiles;
+  }
+}
@@ -0,0 +1,133 @@
+package de.lemaik.chunkymap.dynmap;
+
+import org.dynmap.Client.Tile;
+import org.dynmap.DynmapWorld;
+import org.dynmap.MapManager;
+import se.llbit.log.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hashes, encodes and stores rendered tiles on its own threads so that the render thread can start
+ * with the next tile right away. The queue of tiles waiting to be written is bounded; if it is
+ * full, the render thread writes the tile itself, which slows rendering down to the speed of the
+ * storage instead of piling up images in memory. The queue is drained when the map is disabled.
+ * <p>
+ * Tile updates are collected and passed to Dynmap in batches once the writer catches up with the
+ * queue, so that a tile that is written several times only results in a single update.
+ */
+class TileWriter {
+
+  private static final AtomicInteger threadCount = new AtomicInteger();
+
+  private final ThreadPoolExecutor executor;
+  private final int maxPendingUpdates;
+  private final Map<String, PendingUpdate> pendingUpdates = new LinkedHashMap<>();
+
+  /**
+   * @param threads   number of writer threads
+   * @param queueSize maximum number of tiles waiting to be written
+   */
+  TileWriter(int threads, int queueSize) {
+    executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueSize), runnable -> {
+          Thread thread = new Thread(runnable,
+              "ChunkyMap tile writer " + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }, (task, pool) -> {
+          // unlike CallerRunsPolicy, this also writes tiles that are submitted after shutdown()
+          task.run();
+        });
+    executor.allowCoreThreadTimeOut(true);
+    maxPendingUpdates = Math.max(1, queueSize);
+  }
+
+  /**
+   * Run a write task on a writer thread or, if the queue is full, on the calling thread.
+   *
+   * @param task task that writes a tile
+   * @return future result of the task
+   */
+  <T> CompletableFuture<T> submit(Supplier<T> task) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return task.get();
+      } finally {
+        if (executor.getQueue().isEmpty()) {
+          flushUpdates();
+        }
+      }
+    }, executor);
+  }
+
+  /**
+   * Notify Dynmap about an updated tile with the next batch of updates.
+   *
+   * @param world world of the tile
+   * @param uri   URI of the tile in the map storage
+   */
+  void pushUpdate(DynmapWorld world, String uri) {
+    boolean flush;
+    synchronized (pendingUpdates) {
+      pendingUpdates.put(world.getName() + ":" + uri, new PendingUpdate(world, uri));
+      flush = pendingUpdates.size() >= maxPendingUpdates;
+    }
+    if (flush) {
+      flushUpdates();
+    }
+  }
+
+  /**
+   * Write all queued tiles and pass the pending updates to Dynmap. Tiles that are submitted
+   * afterwards are written on the calling thread.
+   */
+  void shutdown() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        Log.warn("Timed out waiting for the queued tiles to be written");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flushUpdates();
+  }
+
+  private void flushUpdates() {
+    List<PendingUpdate> updates;
+    synchronized (pendingUpdates) {
+      if (pendingUpdates.isEmpty()) {
+        return;
+      }
+      updates = new ArrayList<>(pendingUpdates.values());
+      pendingUpdates.clear();
+    }
+    MapManager mapManager = MapManager.mapman;
+    if (mapManager != null) {
+      for (PendingUpdate update : updates) {
+        mapManager.pushUpdate(update.world, new Tile(update.uri));
+      }
+    }
+  }
+
+  private static class PendingUpdate {
+
+    private final DynmapWorld world;
+    private final String uri;
+
+    private PendingUpdate(DynmapWorld world, String uri) {
+      this.world = world;
+      this.uri = uri;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package de.lemaik.chunkymap.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe histogram of durations with fixed buckets from one millisecond to ten minutes.
+ * Recording a duration doesn't allocate and doesn't block other threads.
+ */
+public class LatencyHistogram {
+
+  /**
+   * Upper bounds of the buckets in milliseconds. Durations above the last bound are counted in an
+   * additional overflow bucket.
+   */
+  static final double[] BUCKET_BOUNDS_MS = {1, 2.5, 5, 10, 25, 50, 100, 250, 500, 1000, 2500,
+      5000, 10000, 25000, 60000, 120000, 300000, 600000};
+  private static final long[] BUCKET_BOUNDS_NANOS = new long[BUCKET_BOUNDS_MS.length];
+
+  static {
+    for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+      BUCKET_BOUNDS_NANOS[i] = (long) (BUCKET_BOUNDS_MS[i] * 1_000_000);
+    }
+  }
+
+  private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MS.length + 1];
+  private final LongAdder sumNanos = new LongAdder();
+  private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+  public LatencyHistogram() {
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Record a duration.
+   *
+   * @param nanos duration in nanoseconds
+   */
+  public void record(long nanos) {
+    int bucket = 0;
+    while (bucket < BUCKET_BOUNDS_NANOS.length && nanos > BUCKET_BOUNDS_NANOS[bucket]) {
+      bucket++;
+    }
+    buckets[bucket].increment();
+    sumNanos.add(nanos);
+    maxNanos.accumulate(nanos);
+  }
+
+  /**
+   * @return number of recorded durations
+   */
+  public long getCount() {
+    long count = 0;
+    for (LongAdder bucket : buckets) {
+      count += bucket.sum();
+    }
+    return count;
+  }
+
+  public long getSumNanos() {
+    return sumNanos.sum();
+  }
+
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  /**
+   * @return number of recorded durations per bucket (not cumulative), the last one being the
+   * overflow bucket
+   */
+  long[] getBucketCounts() {
+    long[] counts = new long[buckets.length];
+    for (int i = 0; i < buckets.length; i++) {
+      counts[i] = buckets[i].sum();
+    }
+    return counts;
+  }
+
+  /**
+   * Estimate a quantile of the recorded durations. The estimate is the upper bound of the bucket
+   * that contains the quantile, or the maximum if that is lower.
+   *
+   * @param quantile quantile between 0 and 1, e.g. 0.95
+   * @return estimated quantile in milliseconds or 0 if nothing was recorded
+   */
+  public double getQuantileMillis(double quantile) {
+    long[] counts = getBucketCounts();
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    double maxMs = getMaxNanos() / 1_000_000.0;
+    long rank = (long) Math.ceil(quantile * total);
+    long seen = 0;
+    for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(BUCKET_BOUNDS_MS[i], maxMs);
+      }
+    }
+    return maxMs;
+  }
+
+  void reset() {
+    for (LongAdder bucket : buckets) {
+      bucket.reset();
+    }
+    sumNanos.reset();
+    maxNanos.reset();
+  }
+
+  static double toSeconds(long nanos) {
+    return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+  }
+}
@@ -0,0 +1,75 @@
+package de.lemaik.chunkymap.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import se.llbit.log.Log;
+
+/**
+ * A minimal HTTP server that serves the {@link RenderMetrics} in the Prometheus text format at
+ * <code>/metrics</code>. There is only one endpoint, no matter how many maps enable it.
+ */
+public class MetricsEndpoint {
+
+  private static HttpServer server;
+
+  private MetricsEndpoint() {
+  }
+
+  /**
+   * Start the endpoint if it isn't running yet.
+   *
+   * @param bindAddress address to listen on
+   * @param port        port to listen on
+   */
+  public static synchronized void start(String bindAddress, int port) {
+    if (server != null) {
+      if (server.getAddress().getPort() != port) {
+        Log.warn("The metrics endpoint is already running on port "
+            + server.getAddress().getPort() + ", ignoring port " + port);
+      }
+      return;
+    }
+    try {
+      server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+      server.createContext("/metrics", MetricsEndpoint::handle);
+      server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ChunkyMap metrics endpoint");
+        thread.setDaemon(true);
+        return thread;
+      }));
+      server.start();
+      Log.info("Serving render metrics at http://" + bindAddress + ":" + port + "/metrics");
+    } catch (IOException e) {
+      server = null;
+      Log.warn("Could not start the metrics endpoint on " + bindAddress + ":" + port, e);
+    }
+  }
+
+  private static void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!exchange.getRequestMethod().equals("GET")) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      try (Writer writer = new OutputStreamWriter(body, StandardCharsets.UTF_8)) {
+        RenderMetrics.INSTANCE.writePrometheus(writer);
+      }
+      exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+      exchange.sendResponseHeaders(200, body.size());
+      try (OutputStream out = exchange.getResponseBody()) {
+        body.writeTo(out);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+}
@@ -0,0 +1,250 @@
+package de.lemaik.chunkymap.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms of the stages of rendering a tile, counters of the tile outcomes and of the
+ * uploaded bytes, shared by all maps. They can be shown with the <code>chunkymap metrics</code> command and scraped by
+ * Prometheus from the {@link MetricsEndpoint}. Stages that are measured with a {@link StageTimer}
+ * are also emitted as Java Flight Recorder events.
+ */
+public class RenderMetrics {
+
+  public static final RenderMetrics INSTANCE = new RenderMetrics();
+
+  private final Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+  private final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+  private final LongAdder uploadedBytes = new LongAdder();
+  private final LongAdder uncompressedUploadedBytes = new LongAdder();
+  private volatile long resetAt = System.currentTimeMillis();
+
+  private RenderMetrics() {
+    for (Stage stage : Stage.values()) {
+      stages.put(stage, new LatencyHistogram());
+    }
+    for (Counter counter : Counter.values()) {
+      counters.put(counter, new LongAdder());
+    }
+  }
+
+  /**
+   * Record the duration of a stage.
+   *
+   * @param stage stage
+   * @param nanos duration in nanoseconds
+   */
+  public void record(Stage stage, long nanos) {
+    stages.get(stage).record(nanos);
+  }
+
+  /**
+   * Start measuring a stage that doesn't belong to a single tile.
+   *
+   * @param stage stage
+   * @return a timer that records the duration once it is stopped
+   */
+  public StageTimer startStage(Stage stage) {
+    return new StageTimer(stage, null, null, nanos -> record(stage, nanos));
+  }
+
+  public void increment(Counter counter) {
+    counters.get(counter).increment();
+  }
+
+  /**
+   * Record a file that was uploaded to ChunkyCloud.
+   *
+   * @param bytes             bytes that were sent
+   * @param uncompressedBytes size of the file before it was compressed
+   */
+  public void recordUpload(long bytes, long uncompressedBytes) {
+    uploadedBytes.add(bytes);
+    uncompressedUploadedBytes.add(uncompressedBytes);
+  }
+
+  public LatencyHistogram getHistogram(Stage stage) {
+    return stages.get(stage);
+  }
+
+  public long getCount(Counter counter) {
+    return counters.get(counter).sum();
+  }
+
+  /**
+   * Reset all histograms and counters.
+   */
+  public void reset() {
+    stages.values().forEach(LatencyHistogram::reset);
+    counters.values().forEach(LongAdder::reset);
+    uploadedBytes.reset();
+    uncompressedUploadedBytes.reset();
+    resetAt = System.currentTimeMillis();
+  }
+
+  /**
+   * @return a human-readable summary, one line per counter and per stage that was recorded at
+   * least once
+   */
+  public List<String> getReport() {
+    List<String> lines = new ArrayList<>();
+    long minutes = (System.currentTimeMillis() - resetAt) / 60000;
+    StringBuilder tiles = new StringBuilder("Tiles in the last " + minutes + " min:");
+    for (Counter counter : Counter.values()) {
+      tiles.append(' ').append(counter.getName()).append('=').append(getCount(counter));
+    }
+    lines.add(tiles.toString());
+    if (uploadedBytes.sum() > 0) {
+      lines.add(String.format(Locale.ROOT, "Uploaded %.1f MB (%.1f MB uncompressed)",
+          uploadedBytes.sum() / 1048576.0, uncompressedUploadedBytes.sum() / 1048576.0));
+    }
+    for (Stage stage : Stage.values()) {
+      LatencyHistogram histogram = stages.get(stage);
+      long count = histogram.getCount();
+      if (count == 0) {
+        continue;
+      }
+      lines.add(String.format(Locale.ROOT,
+          "%-13s %7d x  avg %9.1f ms  p50 %9.1f ms  p95 %9.1f ms  max %9.1f ms",
+          stage.getName(), count, histogram.getSumNanos() / 1_000_000.0 / count,
+          histogram.getQuantileMillis(0.5), histogram.getQuantileMillis(0.95),
+          histogram.getMaxNanos() / 1_000_000.0));
+    }
+    return lines;
+  }
+
+  /**
+   * Write all histograms and counters in the Prometheus text exposition format.
+   *
+   * @param out writer to write to
+   */
+  public void writePrometheus(Writer out) throws IOException {
+    out.write("# HELP chunkymap_stage_duration_seconds "
+        + "Time spent in a stage of rendering a tile.\n");
+    out.write("# TYPE chunkymap_stage_duration_seconds histogram\n");
+    for (Stage stage : Stage.values()) {
+      LatencyHistogram histogram = stages.get(stage);
+      long[] counts = histogram.getBucketCounts();
+      long cumulative = 0;
+      for (int i = 0; i < counts.length; i++) {
+        cumulative += counts[i];
+        String bound = i < LatencyHistogram.BUCKET_BOUNDS_MS.length
+            ? Double.toString(LatencyHistogram.BUCKET_BOUNDS_MS[i] / 1000) : "+Inf";
+        out.write("chunkymap_stage_duration_seconds_bucket{stage=\"" + stage.getName()
+            + "\",le=\"" + bound + "\"} " + cumulative + "\n");
+      }
+      out.write("chunkymap_stage_duration_seconds_sum{stage=\"" + stage.getName() + "\"} "
+          + LatencyHistogram.toSeconds(histogram.getSumNanos()) + "\n");
+      out.write("chunkymap_stage_duration_seconds_count{stage=\"" + stage.getName() + "\"} "
+          + cumulative + "\n");
+    }
+    out.write("# HELP chunkymap_tiles_total Tiles by outcome.\n");
+    out.write("# TYPE chunkymap_tiles_total counter\n");
+    for (Counter counter : Counter.values()) {
+      out.write("chunkymap_tiles_total{outcome=\"" + counter.getName() + "\"} "
+          + getCount(counter) + "\n");
+    }
+    out.write("# HELP chunkymap_upload_bytes_total Bytes uploaded to ChunkyCloud.\n");
+    out.write("# TYPE chunkymap_upload_bytes_total counter\n");
+    out.write("chunkymap_upload_bytes_total " + uploadedBytes.sum() + "\n");
+    out.write("# HELP chunkymap_upload_uncompressed_bytes_total "
+        + "Size of the files uploaded to ChunkyCloud before compression.\n");
+    out.write("# TYPE chunkymap_upload_uncompressed_bytes_total counter\n");
+    out.write("chunkymap_upload_uncompressed_bytes_total " + uncompressedUploadedBytes.sum()
+        + "\n");
+  }
+
+  /**
+   * A stage of rendering a tile.
+   */
+  public enum Stage {
+    /**
+     * Rendering a tile from start to end, including waiting for resources.
+     */
+    TILE("tile"),
+    /**
+     * Loading a Chunky world (level.dat and region bookkeeping), only if it is not cached.
+     */
+    WORLD_OPEN("world_open"),
+    /**
+     * Loading the chunks into the scene. Chunky inserts the chunks into the octree while loading
+     * them, so this includes building the octree for local renders.
+     */
+    CHUNK_LOAD("chunk_load"),
+    /**
+     * Finalizing and writing the octree that is uploaded to ChunkyCloud.
+     */
+    OCTREE_BUILD("octree_build"),
+    /**
+     * Path tracing the scene locally, including the denoiser.
+     */
+    PATH_TRACE("path_trace"),
+    DENOISE("denoise"),
+    /**
+     * Post-processing the rendered frame and copying it into an image.
+     */
+    POST_PROCESS("post_process"),
+    HASH("hash"),
+    /**
+     * Writing the tile to the map storage and notifying Dynmap about the update.
+     */
+    STORAGE_WRITE("storage_write"),
+    /**
+     * Uploading the scene and octree or region files to ChunkyCloud and creating the job.
+     */
+    UPLOAD("upload"),
+    REMOTE_WAIT("remote_wait"),
+    DOWNLOAD("download");
+
+    private final String name;
+
+    Stage(String name) {
+      this.name = name;
+    }
+
+    /**
+     * @return name of this stage, as used in the report and the Prometheus labels
+     */
+    public String getName() {
+      return name;
+    }
+  }
+
+  /**
+   * An outcome of rendering a tile.
+   */
+  public enum Counter {
+    RENDERED("rendered"),
+    /**
+     * The rendered image differed from the stored tile and was written.
+     */
+    UPDATED("updated"),
+    /**
+     * The rendered image had the same hash as the stored tile, so it wasn't written.
+     */
+    SKIPPED_BY_HASH("skipped_by_hash"),
+    /**
+     * The tile wasn't rendered because its inputs didn't change or because it was already rendered
+     * as part of a block of tiles.
+     */
+    SKIPPED_UNCHANGED("skipped_unchanged"),
+    FAILED("failed"),
+    REQUEUED("requeued");
+
+    private final String name;
+
+    Counter(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package de.lemaik.chunkymap.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for one stage of rendering a tile, see {@link StageTimer}.
+ */
+@Name("de.lemaik.chunkymap.RenderStage")
+@Label("Render Stage")
+@Category({"ChunkyMap", "Rendering"})
+@Description("A stage of rendering a tile, e.g. loading chunks or path tracing")
+@StackTrace(false)
+class RenderStageEvent extends Event {
+
+  @Label("Stage")
+  String stage;
+
+  @Label("Map")
+  String map;
+
+  @Label("Tile")
+  @Description("Tile coordinates as x_y")
+  String tile;
+}
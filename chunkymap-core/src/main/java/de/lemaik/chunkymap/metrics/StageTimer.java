@@ -0,0 +1,46 @@
+package de.lemaik.chunkymap.metrics;
+
+import de.lemaik.chunkymap.metrics.RenderMetrics.Stage;
+import java.util.function.LongConsumer;
+
+/**
+ * Measures one stage of rendering a tile. Stopping the timer records the duration and commits a
+ * {@link RenderStageEvent} if Java Flight Recorder is recording it.
+ */
+public class StageTimer {
+
+  private final long start = System.nanoTime();
+  private final LongConsumer recorder;
+  private final RenderStageEvent event;
+
+  /**
+   * Start a timer.
+   *
+   * @param stage    stage to measure
+   * @param map      name of the map or null if unknown
+   * @param tile     tile coordinates or null if unknown
+   * @param recorder receives the duration in nanoseconds once the timer is stopped
+   */
+  public StageTimer(Stage stage, String map, String tile, LongConsumer recorder) {
+    this.recorder = recorder;
+    event = new RenderStageEvent();
+    if (event.isEnabled()) {
+      event.stage = stage.getName();
+      event.map = map;
+      event.tile = tile;
+      event.begin();
+    }
+  }
+
+  /**
+   * Stop this timer and record the duration. Must only be called once.
+   *
+   * @return duration in nanoseconds
+   */
+  public long stop() {
+    long nanos = System.nanoTime() - start;
+    recorder.accept(nanos);
+    event.commit();
+    return nanos;
+  }
+}
@@ -0,0 +1,140 @@
+package de.lemaik.chunkymap.metrics;
+
+import de.lemaik.chunkymap.metrics.RenderMetrics.Stage;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A Java Flight Recorder event for rendering a tile, with the durations of its stages. The event
+ * is only committed if a recording that enables it is running, so it costs next to nothing
+ * otherwise.
+ */
+@Name("de.lemaik.chunkymap.TileRender")
+@Label("Tile Render")
+@Category({"ChunkyMap", "Rendering"})
+@Description("Rendering a single map tile")
+@StackTrace(false)
+public class TileRenderEvent extends Event {
+
+  @Label("World")
+  public String world;
+
+  @Label("Map")
+  public String map;
+
+  @Label("Tile X")
+  public int tileX;
+
+  @Label("Tile Y")
+  public int tileY;
+
+  @Label("Boost Zoom")
+  public int boostZoom;
+
+  @Label("Renderer")
+  @Description("local or chunkycloud")
+  public String renderer;
+
+  @Label("Outcome")
+  @Description("Outcome of the render, e.g. updated, skipped_by_hash or failed")
+  public String outcome;
+
+  @Label("Chunk Count")
+  public int chunkCount;
+
+  @Label("Octree Implementation")
+  public String octreeImplementation;
+
+  @Label("Samples Per Pixel")
+  @Description("Samples per pixel that were reached")
+  public int samplesPerPixel;
+
+  @Label("Chunk Load")
+  @Timespan(Timespan.NANOSECONDS)
+  public long chunkLoad;
+
+  @Label("Octree Build")
+  @Timespan(Timespan.NANOSECONDS)
+  public long octreeBuild;
+
+  @Label("Path Trace")
+  @Timespan(Timespan.NANOSECONDS)
+  public long pathTrace;
+
+  @Label("Denoise")
+  @Timespan(Timespan.NANOSECONDS)
+  public long denoise;
+
+  @Label("Post-process")
+  @Timespan(Timespan.NANOSECONDS)
+  public long postProcess;
+
+  @Label("Hash")
+  @Timespan(Timespan.NANOSECONDS)
+  public long hash;
+
+  @Label("Storage Write")
+  @Timespan(Timespan.NANOSECONDS)
+  public long storageWrite;
+
+  @Label("Upload")
+  @Timespan(Timespan.NANOSECONDS)
+  public long upload;
+
+  @Label("Remote Wait")
+  @Timespan(Timespan.NANOSECONDS)
+  public long remoteWait;
+
+  @Label("Download")
+  @Timespan(Timespan.NANOSECONDS)
+  public long download;
+
+  /**
+   * Set the duration of a stage.
+   *
+   * @param stage stage, {@link Stage#TILE} is ignored because it's the duration of the event and
+   *              {@link Stage#WORLD_OPEN} because worlds are shared by all tiles
+   * @param nanos duration in nanoseconds
+   */
+  public void setStageDuration(Stage stage, long nanos) {
+    switch (stage) {
+      case CHUNK_LOAD:
+        chunkLoad = nanos;
+        break;
+      case OCTREE_BUILD:
+        octreeBuild = nanos;
+        break;
+      case PATH_TRACE:
+        pathTrace = nanos;
+        break;
+      case DENOISE:
+        denoise = nanos;
+        break;
+      case POST_PROCESS:
+        postProcess = nanos;
+        break;
+      case HASH:
+        hash = nanos;
+        break;
+      case STORAGE_WRITE:
+        storageWrite = nanos;
+        break;
+      case UPLOAD:
+        upload = nanos;
+        break;
+      case REMOTE_WAIT:
+        remoteWait = nanos;
+        break;
+      case DOWNLOAD:
+        download = nanos;
+        break;
+      default:
+        break;
+    }
+  }
+}
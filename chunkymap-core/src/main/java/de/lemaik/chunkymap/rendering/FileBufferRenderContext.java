@@ -1,10 +1,18 @@
 package de.lemaik.chunkymap.rendering;
 
 
+import de.lemaik.chunkymap.metrics.RenderMetrics;
+import de.lemaik.chunkymap.metrics.RenderMetrics.Stage;
+import de.lemaik.chunkymap.metrics.StageTimer;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.UUID;
 
 import se.llbit.chunky.main.Chunky;
 import se.llbit.chunky.main.ChunkyOptions;
@@ -12,12 +20,20 @@ import se.llbit.chunky.renderer.RenderContext;
 
 /**
  * A mocked {@link RenderContext} for Chunky that saves scene files into buffers. Only supports
- * saving scenes.
+ * saving scenes. The octree can be hundreds of megabytes large, so it is written to a temporary
+ * file instead of a buffer.
+ * <p>
+ * The context also collects how long the stages of rendering the current tile took and how many
+ * samples per pixel were reached.
  */
 public class FileBufferRenderContext extends RenderContext {
 
   private ByteArrayOutputStream scene;
-  private ByteArrayOutputStream octree;
+  private File octree;
+  private final long[] stageNanos = new long[Stage.values().length];
+  private String map;
+  private String tile;
+  private int samplesPerPixel;
 
   public FileBufferRenderContext() {
     super(new Chunky(ChunkyOptions.getDefaults()));
@@ -35,7 +51,11 @@ public class FileBufferRenderContext extends RenderContext {
     if (fileName.endsWith(".json")) {
       return scene = new ByteArrayOutputStream();
     } else if (fileName.endsWith(".octree2")) {
-      return octree = new ByteArrayOutputStream();
+      deleteOctree();
+      octree = new File(System.getProperty("java.io.tmpdir"),
+          "chunkymap-" + UUID.randomUUID() + ".octree2");
+      octree.deleteOnExit();
+      return new BufferedOutputStream(new FileOutputStream(octree));
     } else {
       return new OutputStream() {
         @Override
@@ -50,16 +70,86 @@ public class FileBufferRenderContext extends RenderContext {
     return scene.toByteArray();
   }
 
-  public byte[] getOctree() {
-    return octree.toByteArray();
+  /**
+   * @return the temporary file that contains the octree, deleted when this context is disposed
+   */
+  public File getOctree() {
+    return octree;
   }
 
   public void setRenderThreadCount(int threads) {
     config.renderThreads = threads;
   }
 
+  /**
+   * Set the tile that is rendered with this context, to label the stage events.
+   *
+   * @param map   name of the map
+   * @param tileX x coordinate of the tile
+   * @param tileY y coordinate of the tile
+   */
+  public void setTile(String map, int tileX, int tileY) {
+    this.map = map;
+    this.tile = tileX + "_" + tileY;
+  }
+
+  /**
+   * Start measuring a stage of rendering the current tile.
+   *
+   * @param stage stage
+   * @return a timer that records the duration once it is stopped
+   */
+  public StageTimer startStage(Stage stage) {
+    return new StageTimer(stage, map, tile, nanos -> recordStage(stage, nanos));
+  }
+
+  /**
+   * Record the duration of a stage of rendering the current tile, both for this tile and in the
+   * {@link RenderMetrics}.
+   *
+   * @param stage stage
+   * @param nanos duration in nanoseconds
+   */
+  public void recordStage(Stage stage, long nanos) {
+    stageNanos[stage.ordinal()] += nanos;
+    RenderMetrics.INSTANCE.record(stage, nanos);
+  }
+
+  /**
+   * @return total time spent in the given stage of rendering the current tile, in nanoseconds
+   */
+  public long getStageNanos(Stage stage) {
+    return stageNanos[stage.ordinal()];
+  }
+
+  /**
+   * @return samples per pixel that the current tile was rendered with, 0 if unknown
+   */
+  public int getSamplesPerPixel() {
+    return samplesPerPixel;
+  }
+
+  public void setSamplesPerPixel(int samplesPerPixel) {
+    this.samplesPerPixel = samplesPerPixel;
+  }
+
+  /**
+   * Release the scene buffers and reset the tile information so that this context can be re-used
+   * for another scene.
+   */
   public void dispose() {
     scene = null;
-    octree = null;
+    deleteOctree();
+    Arrays.fill(stageNanos, 0);
+    map = null;
+    tile = null;
+    samplesPerPixel = 0;
+  }
+
+  private void deleteOctree() {
+    if (octree != null) {
+      octree.delete();
+      octree = null;
+    }
   }
 }
@@ -0,0 +1,79 @@
+package de.lemaik.chunkymap.rendering;
+
+import java.awt.image.BufferedImage;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of {@link BufferedImage#TYPE_INT_ARGB} images, keyed by their size. Rendered tiles are
+ * copied or decoded into pooled images and the images are released once the tile is stored, so
+ * that a fullrender doesn't allocate a new image (1 MB for a 512x512 tile) for every tile.
+ * <p>
+ * Images that are acquired but never released are simply garbage collected.
+ */
+public class ImageBufferPool {
+
+  public static final ImageBufferPool INSTANCE = new ImageBufferPool(16);
+
+  private final int maxImagesPerSize;
+  private final Map<Long, Pool> pools = new ConcurrentHashMap<>();
+
+  /**
+   * @param maxImagesPerSize maximum number of idle images to keep per image size
+   */
+  ImageBufferPool(int maxImagesPerSize) {
+    this.maxImagesPerSize = maxImagesPerSize;
+  }
+
+  /**
+   * Get an idle image of the given size or create a new one. The pixels of the image are not
+   * cleared, so they must be overwritten completely.
+   *
+   * @param width  width of the image
+   * @param height height of the image
+   * @return an ARGB image of the given size
+   */
+  public BufferedImage acquire(int width, int height) {
+    Pool pool = pools.get(getKey(width, height));
+    BufferedImage image = null;
+    if (pool != null) {
+      image = pool.images.pollFirst();
+      if (image != null) {
+        pool.size.decrementAndGet();
+      }
+    }
+    return image != null ? image : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+  }
+
+  /**
+   * Put an image back into the pool. The image must not be used after releasing it. Images that
+   * are not ARGB images or that exceed the maximum number of idle images are dropped.
+   *
+   * @param image image to release, may be null
+   */
+  public void release(BufferedImage image) {
+    if (image == null || image.getType() != BufferedImage.TYPE_INT_ARGB) {
+      return;
+    }
+    Pool pool = pools.computeIfAbsent(getKey(image.getWidth(), image.getHeight()),
+        key -> new Pool());
+    if (pool.size.incrementAndGet() <= maxImagesPerSize) {
+      pool.images.offerFirst(image);
+    } else {
+      pool.size.decrementAndGet();
+    }
+  }
+
+  private static long getKey(int width, int height) {
+    return ((long) width << 32) | (height & 0xFFFFFFFFL);
+  }
+
+  private static class Pool {
+
+    private final Deque<BufferedImage> images = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger size = new AtomicInteger();
+  }
+}
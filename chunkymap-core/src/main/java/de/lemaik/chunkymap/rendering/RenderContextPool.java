@@ -0,0 +1,34 @@
+package de.lemaik.chunkymap.rendering;
+
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * A pool of {@link FileBufferRenderContext}s. Creating a context creates a new Chunky instance,
+ * so contexts are reset and re-used for the next tiles instead. The pool grows to the number of
+ * tiles that are rendered concurrently.
+ */
+public class RenderContextPool {
+
+  private final Deque<FileBufferRenderContext> idleContexts = new ConcurrentLinkedDeque<>();
+
+  /**
+   * Get an idle context or create a new one if there is none.
+   *
+   * @return a render context that must be released after rendering
+   */
+  public FileBufferRenderContext acquire() {
+    FileBufferRenderContext context = idleContexts.pollFirst();
+    return context != null ? context : new FileBufferRenderContext();
+  }
+
+  /**
+   * Reset the given context and put it back into the pool.
+   *
+   * @param context context that was acquired from this pool
+   */
+  public void release(FileBufferRenderContext context) {
+    context.dispose();
+    idleContexts.offerFirst(context);
+  }
+}
@@ -0,0 +1,160 @@
+package de.lemaik.chunkymap.rendering.local;
+
+import se.llbit.chunky.renderer.DefaultRenderManager;
+import se.llbit.chunky.renderer.TileBasedRenderer;
+import se.llbit.chunky.renderer.scene.Camera;
+import se.llbit.chunky.renderer.scene.RayTracer;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.json.JsonNumber;
+import se.llbit.json.JsonObject;
+import se.llbit.json.JsonValue;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A path tracer that only takes more samples for pixels that are still noisy.
+ * <p>
+ * After a minimum number of samples, the relative standard error of the luminance of every pixel
+ * is estimated from the running variance of its samples. Pixels whose error is below the
+ * threshold, e.g. flat terrain, stop receiving samples, while noisy pixels, e.g. water edges, glass
+ * or emitters, are sampled until the target SPP is reached. Rendering stops as soon as all pixels
+ * are converged. The settings are read from the additional data of the scene, see
+ * {@link #saveSettings(Scene, int, double)}.
+ */
+public class AdaptivePathTracingRenderer extends TileBasedRenderer {
+
+    public static final String ID = "AdaptivePathTracer";
+    private static final String SETTINGS_KEY = "adaptiveSampling";
+    private static final double EPSILON = 1e-4;
+
+    private final RayTracer tracer;
+
+    public AdaptivePathTracingRenderer(RayTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "Adaptive path tracer";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Path tracer that stops sampling pixels once they are converged.";
+    }
+
+    /**
+     * Save the adaptive sampling settings to the given scene.
+     *
+     * @param scene     scene
+     * @param minSpp    samples per pixel to take for every pixel before estimating its error
+     * @param threshold relative error at which a pixel is considered converged
+     */
+    public static void saveSettings(Scene scene, int minSpp, double threshold) {
+        JsonObject settings = new JsonObject();
+        settings.set("minSpp", new JsonNumber(minSpp));
+        settings.set("threshold", new JsonNumber(threshold));
+        scene.setAdditionalData(SETTINGS_KEY, settings);
+    }
+
+    @Override
+    public void render(DefaultRenderManager manager) throws InterruptedException {
+        Scene scene = manager.bufferedScene;
+        JsonValue settings = scene.getAdditionalData(SETTINGS_KEY);
+        int minSpp = settings.object().get("minSpp").intValue(16);
+        double threshold = settings.object().get("threshold").doubleValue(0.05);
+
+        int width = scene.canvasConfig.getWidth();
+        int height = scene.canvasConfig.getHeight();
+        int fullWidth = scene.canvasConfig.getFullWidth();
+        int fullHeight = scene.canvasConfig.getFullHeight();
+        int cropX = scene.canvasConfig.getCropX();
+        int cropY = scene.canvasConfig.getCropY();
+        int sppPerPass = manager.context.sppPerPass();
+        Camera cam = scene.camera();
+        double halfWidth = fullWidth / (2.0 * fullHeight);
+        double invHeight = 1.0 / fullHeight;
+
+        double[] sampleBuffer = scene.getSampleBuffer();
+        // samples and mean squared luminance per pixel, the mean color is in the sample buffer
+        int[] pixelSpp = new int[width * height];
+        double[] meanSquaredLuminance = new double[width * height];
+        boolean[] converged = new boolean[width * height];
+        Arrays.fill(pixelSpp, scene.spp);
+        AtomicInteger activePixels = new AtomicInteger();
+
+        while (scene.spp < scene.getTargetSpp()) {
+            boolean estimateError = scene.spp + sppPerPass >= minSpp;
+            activePixels.set(0);
+
+            submitTiles(manager, (state, pixel) -> {
+                int x = pixel.firstInt();
+                int y = pixel.secondInt();
+                int index = y * width + x;
+                if (converged[index]) {
+                    return;
+                }
+
+                double sr = 0;
+                double sg = 0;
+                double sb = 0;
+                double sl2 = 0;
+
+                for (int k = 0; k < sppPerPass; k++) {
+                    double ox = state.random.nextDouble();
+                    double oy = state.random.nextDouble();
+
+                    cam.calcViewRay(state.ray, state.random,
+                            -halfWidth + (x + ox + cropX) * invHeight,
+                            -0.5 + (y + oy + cropY) * invHeight);
+                    scene.rayTrace(tracer, state);
+
+                    double r = state.ray.color.x;
+                    double g = state.ray.color.y;
+                    double b = state.ray.color.z;
+                    double luminance = 0.2126 * r + 0.7152 * g + 0.0722 * b;
+                    sr += r;
+                    sg += g;
+                    sb += b;
+                    sl2 += luminance * luminance;
+                }
+
+                int spp = pixelSpp[index];
+                double sinv = 1.0 / (spp + sppPerPass);
+                int offset = 3 * index;
+                sampleBuffer[offset + 0] = (sampleBuffer[offset + 0] * spp + sr) * sinv;
+                sampleBuffer[offset + 1] = (sampleBuffer[offset + 1] * spp + sg) * sinv;
+                sampleBuffer[offset + 2] = (sampleBuffer[offset + 2] * spp + sb) * sinv;
+                meanSquaredLuminance[index] = (meanSquaredLuminance[index] * spp + sl2) * sinv;
+                pixelSpp[index] = spp + sppPerPass;
+
+                if (estimateError) {
+                    double mean = 0.2126 * sampleBuffer[offset + 0] + 0.7152 * sampleBuffer[offset + 1]
+                            + 0.0722 * sampleBuffer[offset + 2];
+                    double variance = Math.max(0, meanSquaredLuminance[index] - mean * mean);
+                    double error = Math.sqrt(variance / pixelSpp[index]) / (mean + EPSILON);
+                    converged[index] = error < threshold;
+                }
+                if (!converged[index]) {
+                    activePixels.incrementAndGet();
+                }
+            });
+
+            manager.pool.awaitEmpty();
+            scene.spp += sppPerPass;
+            if (activePixels.get() == 0) {
+                // all pixels are converged, finish the render
+                scene.setTargetSpp(scene.spp);
+            }
+            if (postRender.getAsBoolean()) {
+                break;
+            }
+        }
+    }
+}
@@ -3,19 +3,21 @@ package de.lemaik.chunkymap.rendering.local;
 import de.lemaik.chunky.denoiser.DenoisedPathTracingRenderer;
 import de.lemaik.chunky.denoiser.DenoiserSettings;
 import de.lemaik.chunkymap.Platform;
+import de.lemaik.chunkymap.metrics.RenderMetrics.Stage;
+import de.lemaik.chunkymap.metrics.StageTimer;
 import de.lemaik.chunkymap.rendering.FileBufferRenderContext;
+import de.lemaik.chunkymap.rendering.ImageBufferPool;
 import de.lemaik.chunkymap.rendering.RenderException;
 import de.lemaik.chunkymap.rendering.Renderer;
 import de.lemaik.chunkymap.rendering.SilentTaskTracker;
 import se.llbit.chunky.PersistentSettings;
 import se.llbit.chunky.main.Chunky;
-import se.llbit.chunky.renderer.RenderManager;
+import se.llbit.chunky.renderer.DefaultRenderManager;
 import se.llbit.chunky.renderer.SnapshotControl;
 import se.llbit.chunky.renderer.scene.AlphaBuffer;
 import se.llbit.chunky.renderer.scene.PathTracer;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.chunky.renderer.scene.SynchronousSceneManager;
-import se.llbit.chunky.resources.ResourcePackLoader;
 import se.llbit.util.TaskTracker;
 
 import java.awt.*;
@@ -35,7 +37,14 @@ import java.util.function.Consumer;
  */
 public class ChunkyRenderer implements Renderer {
 
-    private static List<File> previousTexturepacks;
+    private static final ResourcePackLock resourcePackLock = new ResourcePackLock();
+    private static final CoreBudget coreBudget = new CoreBudget();
+    /**
+     * The context of the tile that is rendered, inherited by the render threads so that the
+     * denoiser can attribute its time to the tile.
+     */
+    private static final InheritableThreadLocal<FileBufferRenderContext> currentContext =
+            new InheritableThreadLocal<>();
     private File defaultTexturepack;
     private final int targetSpp;
     private final boolean enableDenoiser;
@@ -43,20 +52,39 @@ public class ChunkyRenderer implements Renderer {
     private final int normalTargetSpp;
     private final int threads;
     private final int cpuLoad;
+    private final int minTargetSpp;
+    private final double convergenceThreshold;
+    private final double adaptiveSamplingThreshold;
 
     static {
         Chunky.addRenderer(new DenoisedPathTracingRenderer(
                 new Oidn4jDenoiser(), "Oidn4jDenoisedPathTracer", "DenoisedPathTracer", "DenoisedPathTracer", new PathTracer()));
+        Chunky.addRenderer(new AdaptivePathTracingRenderer(new PathTracer()));
     }
 
+    /**
+     * @param minTargetSpp         SPP to render at least if the rendering is stopped early
+     * @param convergenceThreshold relative error at which the rendering is stopped before reaching the
+     *                             target SPP, 0 to always render the target SPP
+     * @param adaptiveSamplingThreshold relative error at which single pixels stop being sampled, 0 to
+     *                                  sample all pixels equally
+     * @param threadBudget         total number of render threads of all tiles that are rendered at the
+     *                             same time, 0 to use the number of available processors
+     */
     public ChunkyRenderer(int targetSpp, boolean enableDenoiser, int albedoTargetSpp,
-                          int normalTargetSpp, int threads, int cpuLoad) {
+                          int normalTargetSpp, int threads, int cpuLoad, int minTargetSpp,
+                          double convergenceThreshold, double adaptiveSamplingThreshold,
+                          int threadBudget) {
         this.targetSpp = targetSpp;
         this.enableDenoiser = enableDenoiser;
         this.albedoTargetSpp = albedoTargetSpp;
         this.normalTargetSpp = normalTargetSpp;
         this.threads = threads;
         this.cpuLoad = cpuLoad;
+        this.minTargetSpp = minTargetSpp;
+        this.convergenceThreshold = convergenceThreshold;
+        this.adaptiveSamplingThreshold = adaptiveSamplingThreshold;
+        coreBudget.setTotalThreads(threadBudget);
 
         PersistentSettings.changeSettingsDirectory(
                 new File(Platform.getInstance().getDataFolder(), "chunky"));
@@ -79,59 +107,108 @@ public class ChunkyRenderer implements Renderer {
         if (defaultTexturepack != null) {
             resourcepacks.add(defaultTexturepack);
         }
-        if (!resourcepacks.equals(previousTexturepacks)) {
-            ResourcePackLoader.loadResourcePacks(resourcepacks);
-            previousTexturepacks = resourcepacks;
+        try {
+            resourcePackLock.acquire(resourcepacks);
+        } catch (InterruptedException e) {
+            result.completeExceptionally(new RenderException("Waiting for the resource packs failed", e));
+            return result;
         }
 
-        context.setRenderThreadCount(threads);
-        RenderManager renderManager = context.getChunky().getRenderController().getRenderManager();
-        renderManager.setCPULoad(cpuLoad);
-
-        SynchronousSceneManager sceneManager = new SynchronousSceneManager(context, renderManager);
-        sceneManager.withEditSceneProtected(initializeScene);
-        sceneManager.applySceneChanges();
-
-        DenoiserSettings settings = new DenoiserSettings();
-        settings.renderAlbedo.set(albedoTargetSpp > 0);
-        settings.albedoSpp.set(albedoTargetSpp);
-        settings.renderNormal.set(normalTargetSpp > 0);
-        settings.normalSpp.set(normalTargetSpp);
-        settings.saveToScene(sceneManager.getScene());
-
-        renderManager.setSceneProvider(sceneManager);
-        renderManager.setSnapshotControl(new SnapshotControl() {
-            @Override
-            public boolean saveSnapshot(Scene scene, int nextSpp) {
-                return false;
-            }
-
-            @Override
-            public boolean saveRenderDump(Scene scene, int nextSpp) {
-                return false;
-            }
-        });
-
+        int renderThreads = 0;
         try {
-            if (enableDenoiser) {
-                sceneManager.getScene().setRenderer("Oidn4jDenoisedPathTracer");
+            // load the scene before taking render threads from the budget, loading is single-threaded
+            Scene loadedScene = context.getChunky().getSceneFactory().newScene();
+            initializeScene.accept(loadedScene);
+
+            renderThreads = coreBudget.acquire(threads);
+            context.setRenderThreadCount(renderThreads);
+            currentContext.set(context);
+            // the render manager can't be restarted once it is done, so every tile needs a new one
+            DefaultRenderManager renderManager = new DefaultRenderManager(context, true);
+            renderManager.setCPULoad(cpuLoad);
+
+            SynchronousSceneManager sceneManager = new SynchronousSceneManager(context, renderManager);
+            sceneManager.withEditSceneProtected(scene -> {
+                scene.copyState(loadedScene, true);
+                scene.copyTransients(loadedScene);
+            });
+            sceneManager.applySceneChanges();
+
+            DenoiserSettings settings = new DenoiserSettings();
+            settings.renderAlbedo.set(albedoTargetSpp > 0);
+            settings.albedoSpp.set(albedoTargetSpp);
+            settings.renderNormal.set(normalTargetSpp > 0);
+            settings.normalSpp.set(normalTargetSpp);
+            settings.saveToScene(sceneManager.getScene());
+
+            ConvergenceMonitor convergenceMonitor = convergenceThreshold > 0
+                    ? new ConvergenceMonitor(minTargetSpp, convergenceThreshold) : null;
+            renderManager.setSceneProvider(sceneManager);
+            renderManager.setSnapshotControl(new SnapshotControl() {
+                @Override
+                public boolean saveSnapshot(Scene scene, int nextSpp) {
+                    // this is called after every frame, so it's used to stop converged renders early
+                    if (convergenceMonitor != null && convergenceMonitor.isConverged(scene, scene.spp)) {
+                        scene.setTargetSpp(scene.spp);
+                    }
+                    return false;
+                }
+
+                @Override
+                public boolean saveRenderDump(Scene scene, int nextSpp) {
+                    return false;
+                }
+            });
+
+            try {
+                if (enableDenoiser) {
+                    sceneManager.getScene().setRenderer("Oidn4jDenoisedPathTracer");
+                } else if (adaptiveSamplingThreshold > 0) {
+                    AdaptivePathTracingRenderer.saveSettings(sceneManager.getScene(), minTargetSpp,
+                            adaptiveSamplingThreshold);
+                    sceneManager.getScene().setRenderer(AdaptivePathTracingRenderer.ID);
+                }
+                sceneManager.getScene().haltRender();
+                sceneManager.getScene().setTargetSpp(targetSpp);
+                StageTimer pathTrace = context.startStage(Stage.PATH_TRACE);
+                renderManager.start();
+                sceneManager.getScene().startRender();
+                renderManager.join();
+                pathTrace.stop();
+                context.setSamplesPerPixel(sceneManager.getScene().spp);
+                StageTimer postProcess = context.startStage(Stage.POST_PROCESS);
+                BufferedImage image = getImage(sceneManager.getScene());
+                postProcess.stop();
+                result.complete(image);
+            } catch (InterruptedException | ReflectiveOperationException e) {
+                result.completeExceptionally(new RenderException("Rendering failed", e));
+            } finally {
+                renderManager.shutdown();
             }
-            sceneManager.getScene().haltRender();
-            sceneManager.getScene().setTargetSpp(targetSpp);
-            renderManager.start();
-            sceneManager.getScene().startRender();
-            renderManager.join();
-            result.complete(getImage(sceneManager.getScene()));
-        } catch (InterruptedException | ReflectiveOperationException e) {
-            result.completeExceptionally(new RenderException("Rendering failed", e));
+        } catch (InterruptedException e) {
+            result.completeExceptionally(new RenderException("Waiting for render threads failed", e));
         } finally {
-            renderManager.shutdown();
+            currentContext.remove();
+            if (renderThreads > 0) {
+                coreBudget.release(renderThreads);
+            }
+            resourcePackLock.release();
         }
 
         return result;
     }
 
-    private BufferedImage getImage(Scene scene)
+    /**
+     * @return the context of the tile that is rendered on the current thread or null
+     */
+    static FileBufferRenderContext getCurrentContext() {
+        return currentContext.get();
+    }
+
+    /**
+     * Post-process the rendered frame and copy it into an image from the {@link ImageBufferPool}.
+     */
+    static BufferedImage getImage(Scene scene)
             throws ReflectiveOperationException {
         Class<Scene> sceneClass = Scene.class;
         Method computeAlpha = AlphaBuffer.class
@@ -146,7 +223,7 @@ public class ChunkyRenderer implements Renderer {
         }
 
         scene.swapBuffers();
-        BufferedImage renderedImage = new BufferedImage(scene.canvasConfig.getWidth(), scene.canvasConfig.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        BufferedImage renderedImage = ImageBufferPool.INSTANCE.acquire(scene.canvasConfig.getWidth(), scene.canvasConfig.getHeight());
         scene.withBufferedImage(bitmap -> {
             DataBufferInt dataBuffer = (DataBufferInt) renderedImage.getRaster().getDataBuffer();
             int[] data = dataBuffer.getData();
@@ -0,0 +1,64 @@
+package de.lemaik.chunkymap.rendering.local;
+
+import se.llbit.chunky.renderer.scene.Scene;
+
+/**
+ * Estimates the noise of a rendering to stop rendering tiles that are converged before the target
+ * SPP is reached, e.g. flat and evenly lit tiles like oceans.
+ * <p>
+ * The sample buffer contains the mean of all samples of every pixel. The mean after n samples is
+ * compared to the mean after n/2 samples. The expected difference between the two is about as
+ * large as the expected error of the mean after n samples, so the sum of the differences relative
+ * to the sum of the pixel values is used as the relative error of the image.
+ */
+class ConvergenceMonitor {
+
+    private static final double EPSILON = 1e-4;
+
+    private final int minSpp;
+    private final double threshold;
+    private double[] previousSamples;
+    private int previousSpp;
+
+    /**
+     * @param minSpp    SPP to render before checking for convergence
+     * @param threshold relative error at which a rendering is considered converged
+     */
+    ConvergenceMonitor(int minSpp, double threshold) {
+        this.minSpp = Math.max(1, minSpp);
+        this.threshold = threshold;
+    }
+
+    /**
+     * Check if the given scene is converged. This is cheap unless the SPP doubled since the last
+     * check, so it may be called after every frame.
+     *
+     * @param scene scene that is being rendered
+     * @param spp   current SPP of the scene
+     * @return true if the scene is converged
+     */
+    boolean isConverged(Scene scene, int spp) {
+        if (spp < minSpp || (previousSamples != null && spp < previousSpp * 2)) {
+            return false;
+        }
+
+        double[] samples = scene.getSampleBuffer();
+        boolean converged = false;
+        if (previousSamples != null && previousSamples.length == samples.length) {
+            double error = 0;
+            double sum = 0;
+            for (int i = 0; i < samples.length; i++) {
+                error += Math.abs(samples[i] - previousSamples[i]);
+                sum += Math.abs(samples[i]);
+            }
+            converged = error / (sum + EPSILON) < threshold;
+        }
+
+        if (previousSamples == null || previousSamples.length != samples.length) {
+            previousSamples = new double[samples.length];
+        }
+        System.arraycopy(samples, 0, previousSamples, 0, samples.length);
+        previousSpp = spp;
+        return converged;
+    }
+}
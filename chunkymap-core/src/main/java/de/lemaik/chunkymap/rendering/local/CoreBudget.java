@@ -0,0 +1,65 @@
+package de.lemaik.chunkymap.rendering.local;
+
+/**
+ * Divides a total number of render threads among the tiles that are path traced at the same
+ * time. Loading the chunks and post-processing a tile are single-threaded, so many tiles can be
+ * loaded in parallel while only the path tracing draws from the budget. A tile gets up to its
+ * configured number of threads, but no more than its fair share if other tiles are rendering or
+ * waiting for threads.
+ */
+class CoreBudget {
+
+    private int totalThreads = Runtime.getRuntime().availableProcessors();
+    private boolean configured = false;
+    private int usedThreads = 0;
+    private int activeTiles = 0;
+    private int waitingTiles = 0;
+
+    /**
+     * Set the total number of render threads. If multiple maps configure a budget, the largest one
+     * is used.
+     *
+     * @param threads total number of render threads
+     */
+    synchronized void setTotalThreads(int threads) {
+        if (threads > 0 && (!configured || threads > totalThreads)) {
+            totalThreads = threads;
+            configured = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Wait until at least one render thread is available and take a share of the available
+     * threads.
+     *
+     * @param maxThreads maximum number of threads to use
+     * @return number of threads that may be used, must be released with {@link #release(int)}
+     */
+    synchronized int acquire(int maxThreads) throws InterruptedException {
+        waitingTiles++;
+        try {
+            while (usedThreads >= totalThreads) {
+                wait();
+            }
+        } finally {
+            waitingTiles--;
+        }
+        int fairShare = Math.max(1, totalThreads / (activeTiles + waitingTiles + 1));
+        int threads = Math.max(1, Math.min(maxThreads, Math.min(fairShare, totalThreads - usedThreads)));
+        usedThreads += threads;
+        activeTiles++;
+        return threads;
+    }
+
+    /**
+     * Release threads that were acquired with {@link #acquire(int)}.
+     *
+     * @param threads number of threads to release
+     */
+    synchronized void release(int threads) {
+        usedThreads -= threads;
+        activeTiles--;
+        notifyAll();
+    }
+}
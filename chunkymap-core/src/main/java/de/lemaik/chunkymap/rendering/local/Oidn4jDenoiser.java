@@ -1,65 +1,171 @@
 package de.lemaik.chunkymap.rendering.local;
 
 import de.lemaik.chunky.denoiser.Denoiser;
+import de.lemaik.chunkymap.metrics.RenderMetrics;
+import de.lemaik.chunkymap.metrics.RenderMetrics.Stage;
+import de.lemaik.chunkymap.metrics.StageTimer;
+import de.lemaik.chunkymap.rendering.FileBufferRenderContext;
 import net.time4tea.oidn.Oidn;
 import net.time4tea.oidn.OidnDevice;
 import net.time4tea.oidn.OidnFilter;
 import se.llbit.log.Log;
 
 import java.nio.FloatBuffer;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
+/**
+ * A denoiser that uses Intel Open Image Denoise.
+ * <p>
+ * Creating a device and committing a filter is expensive compared to denoising a single tile, so
+ * the device is created once and committed filters, together with their image buffers, are kept
+ * for the next tile of the same size. Every tile uses its own filter, but the filters are executed
+ * one after another because the device holds the error state for all of them. OIDN uses all cores
+ * for a single filter anyway.
+ */
 public class Oidn4jDenoiser implements Denoiser {
+
+    private static final int MAX_IDLE_FILTERS_PER_SIZE = 4;
+
+    private final Map<String, Deque<Filter>> idleFilters = new ConcurrentHashMap<>();
+    private OidnDevice device;
+
     @Override
     public float[] denoise(int width, int height, float[] beauty, float[] albedo, float[] normal) {
-        FloatBuffer albedoBuffer = Oidn.Companion.allocateBuffer(width, height);
-        copy(width, height, albedo, albedoBuffer);
-
-        FloatBuffer normalBuffer = Oidn.Companion.allocateBuffer(width, height);
-        copy(width, height, normal, normalBuffer);
-
-        FloatBuffer buffer = Oidn.Companion.allocateBuffer(width, height);
-        copy(width, height, beauty, buffer);
-
-        Oidn oidn = new Oidn();
-        try (OidnDevice device = oidn.newDevice(Oidn.DeviceType.DEVICE_TYPE_DEFAULT)) {
-            try (OidnFilter filter = device.raytraceFilter()) {
-                filter.setFilterImage(buffer, buffer, width, height);
-                if (albedo != null) {
-                    // albedo is required if normal is set
-                    filter.setAdditionalImages(albedoBuffer, normalBuffer, width, height);
-                }
-                filter.commit();
-                filter.execute();
+        FileBufferRenderContext context = ChunkyRenderer.getCurrentContext();
+        StageTimer timer = context != null ? context.startStage(Stage.DENOISE)
+                : RenderMetrics.INSTANCE.startStage(Stage.DENOISE);
+        // the normal map can only be used together with the albedo map, so the filter only gets
+        // additional images if both are available
+        boolean additionalImages = albedo != null && normal != null;
+        int length = width * height * 3;
 
-                if (!device.error().ok()) {
-                    Log.warn("Denoiser failed: " + device.error().getMessage() + " " + device.error().getError().getExplanation());
-                }
+        Filter filter = null;
+        try {
+            filter = acquireFilter(width, height, additionalImages);
+            filter.color.put(0, beauty, 0, length);
+            if (additionalImages) {
+                filter.albedo.put(0, albedo, 0, length);
+                filter.normal.put(0, normal, 0, length);
+            }
+            OidnDevice device = getDevice();
+            String error;
+            synchronized (device) {
+                filter.filter.execute();
+                error = getError(device);
+            }
+            if (error == null) {
+                filter.color.get(0, beauty, 0, length);
+            } else {
+                Log.warn("Denoiser failed: " + error);
             }
         } catch (Exception e) {
             Log.warn("Denoiser failed", e);
+            if (filter != null) {
+                // the filter might be in a broken state, so it shouldn't be re-used
+                filter.close();
+                filter = null;
+            }
+        } finally {
+            if (filter != null) {
+                releaseFilter(filter);
+            }
         }
 
-        copy(width, height, buffer, beauty);
-
+        timer.stop();
         return beauty;
     }
 
-    private void copy(int width, int height, float[] source, FloatBuffer dest) {
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                dest.put((y * width + x) * 3 + 0, source[(y * width + x) * 3 + 0]);
-                dest.put((y * width + x) * 3 + 1, source[(y * width + x) * 3 + 1]);
-                dest.put((y * width + x) * 3 + 2, source[(y * width + x) * 3 + 2]);
-            }
+    private synchronized OidnDevice getDevice() {
+        if (device == null) {
+            device = new Oidn().newDevice(Oidn.DeviceType.DEVICE_TYPE_DEFAULT);
         }
+        return device;
     }
 
-    private void copy(int width, int height, FloatBuffer source, float[] dest) {
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                dest[(y * width + x) * 3 + 0] = source.get((y * width + x) * 3 + 0);
-                dest[(y * width + x) * 3 + 1] = source.get((y * width + x) * 3 + 1);
-                dest[(y * width + x) * 3 + 2] = source.get((y * width + x) * 3 + 2);
+    /**
+     * Get the error of the last operation on the given device. The error state belongs to the
+     * device, which is shared by the filters of all tiles, and reading it resets it, so this must
+     * be called while holding the lock on the device, right after the operation.
+     *
+     * @return the error message or null if there was no error
+     */
+    private static String getError(OidnDevice device) {
+        var error = device.error();
+        return error.ok() ? null : error.getMessage() + " " + error.getError().getExplanation();
+    }
+
+    /**
+     * Get an idle committed filter for the given image size or create a new one.
+     */
+    private Filter acquireFilter(int width, int height, boolean additionalImages) {
+        Deque<Filter> filters = idleFilters.get(Filter.getKey(width, height, additionalImages));
+        Filter filter = filters != null ? filters.pollFirst() : null;
+        if (filter != null) {
+            return filter;
+        }
+        OidnDevice device = getDevice();
+        synchronized (device) {
+            return new Filter(device, width, height, additionalImages);
+        }
+    }
+
+    private void releaseFilter(Filter filter) {
+        Deque<Filter> filters = idleFilters.computeIfAbsent(filter.key,
+                key -> new ConcurrentLinkedDeque<>());
+        // the size is only an estimate, but that's good enough to limit the number of idle filters
+        if (filters.size() < MAX_IDLE_FILTERS_PER_SIZE) {
+            filters.offerFirst(filter);
+        } else {
+            filter.close();
+        }
+    }
+
+    /**
+     * A committed filter with direct buffers for its images. The color buffer is also used as
+     * output buffer.
+     */
+    private static class Filter {
+
+        private final String key;
+        private final OidnFilter filter;
+        private final FloatBuffer color;
+        private final FloatBuffer albedo;
+        private final FloatBuffer normal;
+
+        private Filter(OidnDevice device, int width, int height, boolean additionalImages) {
+            key = getKey(width, height, additionalImages);
+            color = Oidn.Companion.allocateBuffer(width, height);
+            albedo = additionalImages ? Oidn.Companion.allocateBuffer(width, height) : null;
+            normal = additionalImages ? Oidn.Companion.allocateBuffer(width, height) : null;
+            filter = device.raytraceFilter();
+            try {
+                filter.setFilterImage(color, color, width, height);
+                if (additionalImages) {
+                    filter.setAdditionalImages(albedo, normal, width, height);
+                }
+                filter.commit();
+                String error = getError(device);
+                if (error != null) {
+                    throw new IllegalStateException("Could not create the denoiser filter: " + error);
+                }
+            } catch (RuntimeException e) {
+                filter.close();
+                throw e;
+            }
+        }
+
+        private static String getKey(int width, int height, boolean additionalImages) {
+            return width + "x" + height + (additionalImages ? "+albedo+normal" : "");
+        }
+
+        private void close() {
+            try {
+                filter.close();
+            } catch (Exception e) {
+                Log.warn("Could not release the denoiser filter", e);
             }
         }
     }
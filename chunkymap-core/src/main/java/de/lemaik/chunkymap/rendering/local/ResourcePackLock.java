@@ -0,0 +1,99 @@
+package de.lemaik.chunkymap.rendering.local;
+
+import se.llbit.chunky.resources.ResourcePackLoader;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Guards the resource packs that are loaded into Chunky.
+ * <p>
+ * Chunky keeps the textures of the loaded resource packs in global state, so only one combination
+ * of resource packs can be resident at a time and it must not change while a tile is loaded or
+ * rendered. Any number of tiles that use the loaded resource packs may render concurrently. Tiles
+ * that need other resource packs wait until the running tiles are done, then the resource packs
+ * are swapped. To avoid swapping back and forth on every tile when maps with different resource
+ * packs are rendered at the same time, up to {@link #MAX_BATCH_SIZE} tiles are rendered with the
+ * loaded resource packs before waiting tiles with other resource packs get their turn.
+ */
+class ResourcePackLock {
+
+    private static final int MAX_BATCH_SIZE = 32;
+
+    private final Consumer<List<File>> loader;
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition changed = lock.newCondition();
+    private final Map<List<File>, Integer> waiting = new HashMap<>();
+    private List<File> loaded;
+    private int active = 0;
+    private int batchSize = 0;
+
+    ResourcePackLock() {
+        this(ResourcePackLoader::loadResourcePacks);
+    }
+
+    /**
+     * @param loader loads the given resource packs into Chunky
+     */
+    ResourcePackLock(Consumer<List<File>> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Wait until the given resource packs are loaded and may be used, loading them if required.
+     * Every call must be followed by a call to {@link #release()}.
+     *
+     * @param resourcepacks resource packs to use
+     */
+    void acquire(List<File> resourcepacks) throws InterruptedException {
+        lock.lock();
+        try {
+            waiting.merge(resourcepacks, 1, Integer::sum);
+            try {
+                while (true) {
+                    if (resourcepacks.equals(loaded)
+                            && (batchSize < MAX_BATCH_SIZE || !isOtherWaiting(resourcepacks))) {
+                        break;
+                    }
+                    if (active == 0 && !resourcepacks.equals(loaded)
+                            && (loaded == null || batchSize >= MAX_BATCH_SIZE || !waiting.containsKey(loaded))) {
+                        loader.accept(resourcepacks);
+                        loaded = resourcepacks;
+                        batchSize = 0;
+                        break;
+                    }
+                    changed.await();
+                }
+            } finally {
+                waiting.computeIfPresent(resourcepacks, (packs, count) -> count > 1 ? count - 1 : null);
+                changed.signalAll();
+            }
+            active++;
+            batchSize++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Release the resource packs that were acquired with {@link #acquire(List)}.
+     */
+    void release() {
+        lock.lock();
+        try {
+            active--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isOtherWaiting(List<File> resourcepacks) {
+        return waiting.keySet().stream().anyMatch(packs -> !packs.equals(resourcepacks));
+    }
+}
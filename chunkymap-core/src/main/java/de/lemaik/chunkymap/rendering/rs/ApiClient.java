@@ -20,26 +20,40 @@
 package de.lemaik.chunkymap.rendering.rs;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonPrimitive;
+import de.lemaik.chunkymap.Platform;
+import de.lemaik.chunkymap.metrics.RenderMetrics;
+import de.lemaik.chunkymap.rendering.ImageBufferPool;
 import de.lemaik.chunkymap.rendering.RenderException;
-import java.awt.Graphics;
+import de.lemaik.chunkymap.util.RegionChunks;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
-import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
 import okhttp3.Call;
 import okhttp3.Callback;
+import okhttp3.Headers;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
@@ -47,19 +61,45 @@ import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import okio.Buffer;
 import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.GzipSink;
 import okio.Okio;
+import okio.Sink;
 import okio.Source;
 import se.llbit.util.TaskTracker;
 
 public class ApiClient {
 
   private static final Gson gson = new Gson();
+  static final long MIN_POLL_INTERVAL = 500;
+  static final long MAX_POLL_INTERVAL = 10000;
+  private static final ScheduledExecutorService pollExecutor = Executors
+      .newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ChunkyMap render job poller");
+        thread.setDaemon(true);
+        return thread;
+      });
+  private static RegionHashCache regionHashes;
   private final String baseUrl;
   private final OkHttpClient client;
+  private final boolean compressUploads;
+  private final boolean chunkUploads;
 
   public ApiClient(String baseUrl, String apiKey) {
+    this(baseUrl, apiKey, false, false);
+  }
+
+  /**
+   * @param compressUploads gzip the scene and octree while uploading them
+   * @param chunkUploads    send the hashes of all chunks and only upload the chunks that the
+   *                        render service is missing instead of whole region files
+   */
+  public ApiClient(String baseUrl, String apiKey, boolean compressUploads, boolean chunkUploads) {
     this.baseUrl = baseUrl;
+    this.compressUploads = compressUploads;
+    this.chunkUploads = chunkUploads;
     client = new OkHttpClient.Builder()
         .addInterceptor(chain -> chain.proceed(
             chain.request().newBuilder()
@@ -72,16 +112,35 @@ public class ApiClient {
         .build();
   }
 
-  public CompletableFuture<RenderJob> createJob(byte[] scene, byte[] octree, byte[] skymap,
+  private static synchronized RegionHashCache getRegionHashes() {
+    if (regionHashes == null) {
+      regionHashes = new RegionHashCache(
+          new File(Platform.getInstance().getDataFolder(), "region-hashes.json"));
+    }
+    return regionHashes;
+  }
+
+  /**
+   * Save the cached region hashes and stop saving them periodically. The cache is loaded again
+   * when it is needed the next time.
+   */
+  public static synchronized void closeRegionHashes() {
+    if (regionHashes != null) {
+      regionHashes.close();
+      regionHashes = null;
+    }
+  }
+
+  public CompletableFuture<RenderJob> createJob(byte[] scene, File octree, byte[] skymap,
       String skymapName, String texturepack, int targetSpp, TaskTracker taskTracker) {
     CompletableFuture<RenderJob> result = new CompletableFuture<>();
 
     MultipartBody.Builder multipartBuilder = new MultipartBody.Builder()
         .setType(MediaType.parse("multipart/form-data"))
-        .addFormDataPart("scene", "scene.json",
-            byteBody(scene, () -> taskTracker.task("Upload scene...")))
-        .addFormDataPart("octree", "scene.octree2",
-            byteBody(octree, () -> taskTracker.task("Upload octree...")))
+        .addPart(uploadPart("scene", "scene.json",
+            byteBody(scene, () -> taskTracker.task("Upload scene..."))))
+        .addPart(uploadPart("octree", "scene.octree2",
+            fileBody(octree, () -> taskTracker.task("Upload octree..."))))
         .addFormDataPart("targetSpp", "" + targetSpp)
         .addFormDataPart("transient", "true");
 
@@ -130,7 +189,7 @@ public class ApiClient {
   }
 
   private CompletableFuture<RenderJob> createJob(byte[] scene, List<File> regionFiles,
-      JsonObject cachedRegions, byte[] skymap,
+      JsonObject cachedRegions, JsonObject cachedChunks, byte[] skymap,
       String skymapName, String texturepack, int targetSpp, TaskTracker taskTracker) {
     CompletableFuture<RenderJob> result = new CompletableFuture<>();
 
@@ -144,12 +203,16 @@ public class ApiClient {
 
     MultipartBody.Builder multipartBuilder = new MultipartBody.Builder()
         .setType(MediaType.parse("multipart/form-data"))
-        .addFormDataPart("scene", "scene.json",
-            byteBody(scene, () -> taskTracker.task("Upload scene...")))
+        .addPart(uploadPart("scene", "scene.json",
+            byteBody(scene, () -> taskTracker.task("Upload scene..."))))
         .addFormDataPart("targetSpp", "" + targetSpp)
         .addFormDataPart("transient", "true")
         .addFormDataPart("cachedRegions", regions.toString());
 
+    if (cachedChunks != null) {
+      multipartBuilder = multipartBuilder.addFormDataPart("cachedChunks", cachedChunks.toString());
+    }
+
     for (File region : regionFiles) {
       multipartBuilder = multipartBuilder.addFormDataPart("region", region.getName(),
           fileBody(region, () -> taskTracker.task("Upload region " + region.getName())));
@@ -207,19 +270,29 @@ public class ApiClient {
     CompletableFuture<RenderJob> result = new CompletableFuture<>();
 
     JsonObject regions = new JsonObject();
+    JsonObject chunks = chunkUploads ? new JsonObject() : null;
     for (File region : regionFiles) {
-      regions.addProperty(region.getName(),
-          Okio.buffer(Okio.source(region)).readByteString().md5().hex());
+      regions.addProperty(region.getName(), getRegionHashes().getMd5(region));
+      if (chunks != null) {
+        JsonObject regionChunks = new JsonObject();
+        getRegionHashes().getChunkMd5s(region)
+            .forEach((index, md5) -> regionChunks.addProperty(index.toString(), md5));
+        chunks.add(region.getName(), regionChunks);
+      }
     }
 
     MultipartBody.Builder multipartBuilder = new MultipartBody.Builder()
         .setType(MediaType.parse("multipart/form-data"))
-        .addFormDataPart("scene", "scene.json",
-            byteBody(scene, () -> taskTracker.task("Upload scene...")))
+        .addPart(uploadPart("scene", "scene.json",
+            byteBody(scene, () -> taskTracker.task("Upload scene..."))))
         .addFormDataPart("targetSpp", "" + targetSpp)
         .addFormDataPart("transient", "true")
         .addFormDataPart("cachedRegions", regions.toString());
 
+    if (chunks != null) {
+      multipartBuilder = multipartBuilder.addFormDataPart("cachedChunks", chunks.toString());
+    }
+
     if (skymap != null) {
       multipartBuilder = multipartBuilder.addFormDataPart("skymap", skymapName,
           byteBody(skymap, () -> taskTracker.task("Upload skymap...")));
@@ -257,13 +330,21 @@ public class ApiClient {
                     Reader reader = body.charStream()
                 ) {
                   JsonObject obj = gson.fromJson(reader, JsonObject.class);
-                  if (obj.has("missing")) {
+                  if (obj.has("missing") || (chunkUploads && obj.has("missingChunks"))) {
+                    File sparseRegionsFolder;
+                    try {
+                      sparseRegionsFolder = Files.createTempDirectory("chunkymap-regions")
+                          .toFile();
+                    } catch (IOException e) {
+                      result.completeExceptionally(e);
+                      return;
+                    }
                     try {
-                      ApiClient.this.createJob(scene, regionFiles.stream().filter(
-                          file -> obj.getAsJsonArray("missing")
-                              .contains(new JsonPrimitive(file.getName()))).collect(
-                          Collectors.toList()), regions, skymap, skymapName, texturepack, targetSpp,
+                      ApiClient.this.createJob(scene,
+                          getRegionUploads(regionFiles, obj, sparseRegionsFolder), regions, chunks,
+                          skymap, skymapName, texturepack, targetSpp,
                           taskTracker).whenComplete((job, ex) -> {
+                        deleteSparseRegions(sparseRegionsFolder);
                         if (ex == null) {
                           result.complete(job);
                         } else {
@@ -271,6 +352,8 @@ public class ApiClient {
                         }
                       });
                     } catch (Exception e) {
+                      // e.g. writing a sparse region failed, the ones written before are removed
+                      deleteSparseRegions(sparseRegionsFolder);
                       result.completeExceptionally(e);
                     }
                   } else {
@@ -305,6 +388,53 @@ public class ApiClient {
     return result;
   }
 
+  /**
+   * Get the region files to upload after the render service responded that it is missing some
+   * regions or chunks. Regions listed in <code>missing</code> are uploaded as they are. For regions
+   * listed in <code>missingChunks</code>, sparse region files that only contain the missing chunks
+   * are created in the given folder.
+   *
+   * @param regionFiles   region files of the scene
+   * @param response      response of the render service
+   * @param sparseRegions folder to create the sparse region files in
+   * @return region files to upload
+   */
+  private List<File> getRegionUploads(List<File> regionFiles, JsonObject response,
+      File sparseRegions) throws IOException {
+    JsonArray missing = response.has("missing") ? response.getAsJsonArray("missing")
+        : new JsonArray();
+    JsonObject missingChunks = chunkUploads && response.has("missingChunks")
+        ? response.getAsJsonObject("missingChunks") : new JsonObject();
+    List<File> uploads = new ArrayList<>();
+    for (File region : regionFiles) {
+      if (missing.contains(new JsonPrimitive(region.getName()))) {
+        uploads.add(region);
+      } else if (missingChunks.has(region.getName())) {
+        List<Integer> chunks = new ArrayList<>();
+        for (JsonElement chunk : missingChunks.getAsJsonArray(region.getName())) {
+          chunks.add(chunk.getAsInt());
+        }
+        File sparseRegion = new File(sparseRegions, region.getName());
+        RegionChunks.writeSparseRegion(region, chunks, sparseRegion);
+        uploads.add(sparseRegion);
+      }
+    }
+    return uploads;
+  }
+
+  /**
+   * Delete a folder that was created for sparse region files, including the files in it.
+   */
+  private static void deleteSparseRegions(File sparseRegionsFolder) {
+    File[] sparseRegions = sparseRegionsFolder.listFiles();
+    if (sparseRegions != null) {
+      for (File sparseRegion : sparseRegions) {
+        sparseRegion.delete();
+      }
+    }
+    sparseRegionsFolder.delete();
+  }
+
   public CompletableFuture<RenderJob> waitForCompletion(RenderJob renderJob, long timeout,
       TimeUnit unit) {
     if (renderJob.getSpp() >= renderJob.getTargetSpp()) {
@@ -312,27 +442,69 @@ public class ApiClient {
       return CompletableFuture.completedFuture(renderJob);
     }
 
-    final long then = System.currentTimeMillis();
     CompletableFuture<RenderJob> completedJob = new CompletableFuture<>();
-    new Thread(() -> {
-      RenderJob current = renderJob;
-      try {
-        while (current.getSpp() < current.getTargetSpp()) {
-          if (then + unit.toMillis(timeout) < System.currentTimeMillis()) {
-            completedJob
-                .completeExceptionally(
-                    new RenderException("Timeout after " + unit.toMillis(timeout) + " ms"));
-            return;
-          }
-          Thread.sleep(500);
-          current = getJob(current.getId()).get();
-        }
-        completedJob.complete(current);
-      } catch (Exception e) {
+    // the SPP rate of the first poll is measured from the time the job state was passed in, not
+    // from the time of the first poll
+    long start = System.currentTimeMillis();
+    long deadline = start + unit.toMillis(timeout);
+    pollExecutor.schedule(() -> poll(renderJob, start, MIN_POLL_INTERVAL, deadline,
+        unit.toMillis(timeout), completedJob), MIN_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+    return completedJob;
+  }
+
+  /**
+   * Poll the status of a job once and schedule the next poll, if required. The next poll is
+   * scheduled when the job is expected to be about halfway done, based on the rate at which its
+   * SPP increased since the previous poll. This way, jobs that have a long way to go are polled
+   * rarely and jobs that are about to finish are polled often.
+   */
+  private void poll(RenderJob previous, long previousTime, long interval, long deadline,
+      long timeout, CompletableFuture<RenderJob> completedJob) {
+    if (System.currentTimeMillis() > deadline) {
+      completedJob.completeExceptionally(new RenderException("Timeout after " + timeout + " ms"));
+      return;
+    }
+    getJob(previous.getId()).whenComplete((current, e) -> {
+      if (e != null) {
         completedJob.completeExceptionally(e);
+        return;
       }
-    }).start();
-    return completedJob;
+      if (current.getSpp() >= current.getTargetSpp()) {
+        completedJob.complete(current);
+        return;
+      }
+
+      long now = System.currentTimeMillis();
+      long delay = getNextPollInterval(previous.getSpp(), current.getSpp(),
+          current.getTargetSpp(), now - previousTime, interval);
+      pollExecutor.schedule(
+          () -> poll(current, now, delay, deadline, timeout, completedJob), delay,
+          TimeUnit.MILLISECONDS);
+    });
+  }
+
+  /**
+   * Get the interval until the next poll of a job, i.e. the time until the job is expected to be
+   * about halfway done, limited to {@value #MIN_POLL_INTERVAL} to {@value #MAX_POLL_INTERVAL} ms.
+   *
+   * @param previousSpp SPP of the job at the previous poll
+   * @param currentSpp  SPP of the job now
+   * @param targetSpp   target SPP of the job
+   * @param elapsed     time since the previous poll, in milliseconds
+   * @param interval    previous poll interval, in milliseconds
+   * @return the next poll interval, in milliseconds
+   */
+  static long getNextPollInterval(int previousSpp, int currentSpp, int targetSpp, long elapsed,
+      long interval) {
+    long nextInterval;
+    if (currentSpp > previousSpp) {
+      double sppPerMs = (double) (currentSpp - previousSpp) / Math.max(1, elapsed);
+      nextInterval = (long) ((targetSpp - currentSpp) / sppPerMs / 2);
+    } else {
+      // no progress (e.g. the job is still queued), back off
+      nextInterval = interval * 2;
+    }
+    return Math.max(MIN_POLL_INTERVAL, Math.min(MAX_POLL_INTERVAL, nextInterval));
   }
 
   public CompletableFuture<RenderJob> getJob(String jobId) {
@@ -429,6 +601,73 @@ public class ApiClient {
     };
   }
 
+  /**
+   * Create a multipart part for an uploaded file. If uploads are compressed, the body is gzipped
+   * while it is sent and the part is marked with a <code>Content-Encoding: gzip</code> header.
+   * The number of bytes sent is recorded in the {@link RenderMetrics}.
+   */
+  private MultipartBody.Part uploadPart(String name, String fileName, RequestBody body) {
+    RequestBody countingBody = new RequestBody() {
+      @Override
+      public MediaType contentType() {
+        return body.contentType();
+      }
+
+      @Override
+      public long contentLength() throws IOException {
+        return compressUploads ? -1 : body.contentLength();
+      }
+
+      @Override
+      public void writeTo(BufferedSink bufferedSink) throws IOException {
+        CountingSink counter = new CountingSink(bufferedSink);
+        Sink target = counter;
+        if (compressUploads) {
+          target = new ForwardingSink(new GzipSink(counter)) {
+            @Override
+            public void flush() {
+              // flushing the deflater on every progress update would hurt the compression
+            }
+          };
+        }
+        try (BufferedSink sink = Okio.buffer(target)) {
+          body.writeTo(sink);
+        }
+        RenderMetrics.INSTANCE.recordUpload(counter.bytesWritten, body.contentLength());
+      }
+    };
+    if (!compressUploads) {
+      return MultipartBody.Part.createFormData(name, fileName, countingBody);
+    }
+    return MultipartBody.Part.create(Headers.of(
+        "Content-Disposition", "form-data; name=\"" + name + "\"; filename=\"" + fileName + "\"",
+        "Content-Encoding", "gzip"), countingBody);
+  }
+
+  /**
+   * Counts the bytes written to the wrapped sink. Closing this sink only flushes the wrapped sink,
+   * which belongs to the request.
+   */
+  private static class CountingSink extends ForwardingSink {
+
+    private long bytesWritten = 0;
+
+    private CountingSink(Sink delegate) {
+      super(delegate);
+    }
+
+    @Override
+    public void write(Buffer source, long byteCount) throws IOException {
+      super.write(source, byteCount);
+      bytesWritten += byteCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+
   private static RequestBody byteBody(final byte[] content,
       Supplier<TaskTracker.Task> taskCreator) {
     TaskTracker.Task task = taskCreator.get();
@@ -452,12 +691,61 @@ public class ApiClient {
   }
 
   public BufferedImage getPicture(String id) throws IOException {
-    BufferedImage image = ImageIO.read(new URL(baseUrl + "/jobs/" + id + "/latest.png"));
-    BufferedImage img = new BufferedImage(image.getWidth(), image.getHeight(),
-        BufferedImage.TYPE_INT_ARGB);
-    Graphics g = img.getGraphics();
-    g.drawImage(image, 0, 0, null);
-    g.dispose();
-    return img;
+    try (Response response = client.newCall(new Request.Builder()
+        .url(baseUrl + "/jobs/" + id + "/latest.png").get().build()).execute()) {
+      ResponseBody body = response.body();
+      if (response.code() != 200 || body == null) {
+        throw new IOException(
+            "The image could not be downloaded: " + response.code() + " " + response.message());
+      }
+      try (InputStream in = body.byteStream()) {
+        return readArgbImage(in);
+      }
+    }
+  }
+
+  /**
+   * Decode an image into a {@link BufferedImage#TYPE_INT_ARGB} image from the
+   * {@link ImageBufferPool}. If the image reader supports it, the image is decoded directly into the
+   * ARGB image, otherwise the pixels of the decoded image are copied into it.
+   */
+  private static BufferedImage readArgbImage(InputStream in) throws IOException {
+    try (ImageInputStream stream = ImageIO.createImageInputStream(in)) {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+      if (!readers.hasNext()) {
+        throw new IOException("Unsupported image format");
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(stream, true, true);
+        ImageTypeSpecifier argb = ImageTypeSpecifier
+            .createFromBufferedImageType(BufferedImage.TYPE_INT_ARGB);
+        for (Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0); types.hasNext(); ) {
+          if (types.next().equals(argb)) {
+            BufferedImage destination = ImageBufferPool.INSTANCE
+                .acquire(reader.getWidth(0), reader.getHeight(0));
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setDestination(destination);
+            try {
+              return reader.read(0, param);
+            } catch (IOException | RuntimeException e) {
+              ImageBufferPool.INSTANCE.release(destination);
+              throw e;
+            }
+          }
+        }
+
+        BufferedImage image = reader.read(0);
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+          return image;
+        }
+        BufferedImage img = ImageBufferPool.INSTANCE.acquire(image.getWidth(), image.getHeight());
+        image.getRGB(0, 0, image.getWidth(), image.getHeight(),
+            ((DataBufferInt) img.getRaster().getDataBuffer()).getData(), 0, image.getWidth());
+        return img;
+      } finally {
+        reader.dispose();
+      }
+    }
   }
 }
@@ -0,0 +1,238 @@
+package de.lemaik.chunkymap.rendering.rs;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import de.lemaik.chunkymap.util.RegionChunks;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import okio.BufferedSource;
+import okio.HashingSink;
+import okio.Okio;
+import se.llbit.log.Log;
+
+/**
+ * A persistent cache of the MD5 hashes of region files and their chunks. A hash is valid as long as
+ * the path, size and modification time of the region file didn't change. Missing hashes of region
+ * files are computed by streaming the file instead of reading it into memory.
+ * <p>
+ * The hashes of up to {@link #MAX_ENTRIES} region files are kept. If there are more, the hashes
+ * of the least recently used region files are dropped. Hashes of region files that don't exist
+ * anymore are dropped when the cache is loaded.
+ */
+class RegionHashCache {
+
+  static final int MAX_ENTRIES = 1024;
+  private static final Gson gson = new Gson();
+  private static final Type ENTRIES_TYPE = new TypeToken<Map<String, Entry>>() {
+  }.getType();
+  private static final ScheduledExecutorService saveExecutor = Executors
+      .newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ChunkyMap region hash cache");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private final File file;
+  private final int maxEntries;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  /**
+   * Sequence number of the last use of any entry, used to find the least recently used entries.
+   */
+  private final AtomicLong lastUse = new AtomicLong();
+  private volatile boolean dirty = false;
+  private final ScheduledFuture<?> saveTask;
+
+  RegionHashCache(File file) {
+    this(file, MAX_ENTRIES);
+  }
+
+  /**
+   * @param file       file to load the cache from and save it to
+   * @param maxEntries maximum number of region files to keep the hashes of
+   */
+  RegionHashCache(File file, int maxEntries) {
+    this.file = file;
+    this.maxEntries = maxEntries;
+    if (file.isFile()) {
+      try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+        Map<String, Entry> saved = gson.fromJson(reader, ENTRIES_TYPE);
+        if (saved != null) {
+          for (Map.Entry<String, Entry> entry : saved.entrySet()) {
+            if (new File(entry.getKey()).isFile()) {
+              entries.put(entry.getKey(), entry.getValue());
+              lastUse.accumulateAndGet(entry.getValue().lastUse, Math::max);
+            } else {
+              dirty = true;
+            }
+          }
+          evict();
+        }
+      } catch (IOException | JsonParseException e) {
+        Log.warn("Could not read the region hashes from " + file, e);
+      }
+    }
+    saveTask = saveExecutor.scheduleWithFixedDelay(this::save, 30, 30, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Stop saving this cache periodically and save it one last time.
+   */
+  void close() {
+    saveTask.cancel(false);
+    save();
+  }
+
+  /**
+   * Get the MD5 hash of the given region file, computing it if it is not cached or the file was
+   * modified.
+   *
+   * @param region region file
+   * @return hex encoded MD5 hash of the region file
+   * @throws IOException if the region file could not be read
+   */
+  String getMd5(File region) throws IOException {
+    long size = region.length();
+    long lastModified = region.lastModified();
+    Entry entry = getEntry(region, size, lastModified);
+    if (entry != null && entry.md5 != null) {
+      return entry.md5;
+    }
+
+    String md5;
+    try (HashingSink sink = HashingSink.md5(Okio.blackhole());
+        BufferedSource source = Okio.buffer(Okio.source(region))) {
+      source.readAll(sink);
+      md5 = sink.hash().hex();
+    }
+    update(region, size, lastModified, e -> e.md5 = md5);
+    return md5;
+  }
+
+  /**
+   * Get the MD5 hashes of the chunks of the given region file, computing them if they are not
+   * cached or the file was modified.
+   *
+   * @param region region file
+   * @return hex encoded MD5 hash of every chunk, by chunk index
+   * @throws IOException if the region file could not be read
+   * @see RegionChunks#hashChunks(File)
+   */
+  Map<Integer, String> getChunkMd5s(File region) throws IOException {
+    long size = region.length();
+    long lastModified = region.lastModified();
+    Entry entry = getEntry(region, size, lastModified);
+    if (entry != null && entry.chunks != null) {
+      return entry.chunks;
+    }
+
+    Map<Integer, String> chunks = RegionChunks.hashChunks(region);
+    update(region, size, lastModified, e -> e.chunks = chunks);
+    return chunks;
+  }
+
+  private Entry getEntry(File region, long size, long lastModified) {
+    Entry entry = entries.get(region.getAbsolutePath());
+    if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+      entry.lastUse = lastUse.incrementAndGet();
+      return entry;
+    }
+    return null;
+  }
+
+  private void update(File region, long size, long lastModified, Consumer<Entry> update) {
+    if (region.length() != size || region.lastModified() != lastModified) {
+      // only cache hashes if the file wasn't modified while it was read
+      return;
+    }
+    entries.compute(region.getAbsolutePath(), (path, entry) -> {
+      Entry updated = entry != null && entry.size == size && entry.lastModified == lastModified
+          ? entry.copy() : new Entry(size, lastModified);
+      update.accept(updated);
+      updated.lastUse = lastUse.incrementAndGet();
+      return updated;
+    });
+    dirty = true;
+    if (entries.size() > maxEntries) {
+      evict();
+    }
+  }
+
+  /**
+   * Drop the least recently used entries until there are at most {@link #maxEntries} entries.
+   */
+  private synchronized void evict() {
+    // entries are used while they are sorted, so the last uses are sorted as they are now
+    Map<String, Long> lastUses = new HashMap<>();
+    entries.forEach((path, entry) -> lastUses.put(path, entry.lastUse));
+    int excess = lastUses.size() - maxEntries;
+    if (excess <= 0) {
+      return;
+    }
+    List<String> leastRecentlyUsed = new ArrayList<>(lastUses.keySet());
+    leastRecentlyUsed.sort(Comparator.comparingLong(lastUses::get));
+    for (String path : leastRecentlyUsed.subList(0, excess)) {
+      entries.remove(path);
+    }
+    dirty = true;
+  }
+
+  private synchronized void save() {
+    if (!dirty) {
+      return;
+    }
+    dirty = false;
+    try {
+      file.getParentFile().mkdirs();
+      File tempFile = new File(file.getPath() + ".tmp");
+      try (Writer writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+        gson.toJson(new HashMap<>(entries), ENTRIES_TYPE, writer);
+      }
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      dirty = true;
+      Log.warn("Could not save the region hashes to " + file, e);
+    }
+  }
+
+  private static class Entry {
+
+    private long size;
+    private long lastModified;
+    private String md5;
+    private Map<Integer, String> chunks;
+    private long lastUse;
+
+    private Entry(long size, long lastModified) {
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+
+    private Entry copy() {
+      Entry copy = new Entry(size, lastModified);
+      copy.md5 = md5;
+      copy.chunks = chunks;
+      copy.lastUse = lastUse;
+      return copy;
+    }
+  }
+}
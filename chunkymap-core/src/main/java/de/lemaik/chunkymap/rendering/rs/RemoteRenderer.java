@@ -1,5 +1,7 @@
 package de.lemaik.chunkymap.rendering.rs;
 
+import de.lemaik.chunkymap.metrics.RenderMetrics.Stage;
+import de.lemaik.chunkymap.metrics.StageTimer;
 import de.lemaik.chunkymap.rendering.FileBufferRenderContext;
 import de.lemaik.chunkymap.rendering.Renderer;
 import java.awt.image.BufferedImage;
@@ -8,8 +10,13 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.nio.file.Paths;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import se.llbit.chunky.renderer.scene.Scene;
@@ -20,45 +27,73 @@ import se.llbit.util.TaskTracker;
 
 public class RemoteRenderer implements Renderer {
 
+  private static final ExecutorService downloadExecutor = Executors.newCachedThreadPool(
+      runnable -> {
+        Thread thread = new Thread(runnable, "ChunkyMap tile download");
+        thread.setDaemon(true);
+        return thread;
+      });
+
   private final de.lemaik.chunkymap.rendering.rs.ApiClient api;
   private final int samplesPerPixel;
   private final String texturepack;
   private final boolean initializeLocally;
+  private final Semaphore jobWindow;
 
+  /**
+   * @param maxJobsInFlight maximum number of jobs to upload or render remotely at the same time
+   *                        without waiting for their results, or 0 to wait for the result of every
+   *                        job before rendering the next tile
+   * @param compressUploads gzip the scene and octree while uploading them
+   * @param chunkUploads    only upload the chunks of region files that the render service is
+   *                        missing
+   */
   public RemoteRenderer(String apiKey, int samplesPerPixel, String texturepack,
-      boolean initializeLocally) {
+      boolean initializeLocally, int maxJobsInFlight, boolean compressUploads,
+      boolean chunkUploads) {
     this.samplesPerPixel = samplesPerPixel;
     this.texturepack = texturepack;
     this.initializeLocally = initializeLocally;
-    this.api = new ApiClient("https://api.chunkycloud.lemaik.de", apiKey);
+    this.jobWindow = maxJobsInFlight > 0 ? new Semaphore(maxJobsInFlight, true) : null;
+    this.api = new ApiClient("https://api.chunkycloud.lemaik.de", apiKey, compressUploads,
+        chunkUploads);
   }
 
   public boolean shouldInitializeLocally() {
     return initializeLocally;
   }
 
+  /**
+   * @return true if {@link #render(FileBufferRenderContext, File[], Consumer)} returns as soon as
+   * the job is submitted instead of waiting for its result
+   */
+  public boolean isPipelined() {
+    return jobWindow != null;
+  }
+
   @Override
   public CompletableFuture<BufferedImage> render(FileBufferRenderContext context, File[] texturepacks,
       Consumer<Scene> initializeScene) throws IOException {
     Scene scene = context.getChunky().getSceneFactory().newScene();
     initializeScene.accept(scene);
 
+    if (jobWindow != null) {
+      return renderPipelined(context, scene);
+    }
+
     RenderJob job = null;
     try {
-      if (initializeLocally) {
-        job = api
-            .createJob(context.getScene(), context.getOctree(), null, null,
-                this.texturepack, samplesPerPixel, new TaskTracker(ProgressListener.NONE)).get();
-      } else {
-        job = api.createJob(context.getScene(), scene.getChunks().stream().map(
-            ChunkPosition::getRegionPosition).collect(Collectors.toSet()).stream()
-                .map(position -> getRegionFile(scene, position))
-                .filter(File::exists)
-                .collect(Collectors.toList()), null, null,
-            this.texturepack, samplesPerPixel, new TaskTracker(ProgressListener.NONE)).get();
-      }
-      api.waitForCompletion(job, 10, TimeUnit.MINUTES).get();
-      return CompletableFuture.completedFuture(api.getPicture(job.getId()));
+      StageTimer upload = context.startStage(Stage.UPLOAD);
+      job = createJob(context, scene).get();
+      upload.stop();
+      StageTimer remoteWait = context.startStage(Stage.REMOTE_WAIT);
+      RenderJob completedJob = api.waitForCompletion(job, 10, TimeUnit.MINUTES).get();
+      remoteWait.stop();
+      context.setSamplesPerPixel(completedJob.getSpp());
+      StageTimer download = context.startStage(Stage.DOWNLOAD);
+      BufferedImage image = api.getPicture(job.getId());
+      download.stop();
+      return CompletableFuture.completedFuture(image);
     } catch (InterruptedException | ExecutionException e) {
       if (job != null) {
         try {
@@ -70,6 +105,72 @@ public class RemoteRenderer implements Renderer {
     }
   }
 
+  /**
+   * Submit a job for the scene and return immediately. Waits until there is room in the job window
+   * first, so that the tiles are not prepared faster than they can be rendered.
+   */
+  private CompletableFuture<BufferedImage> renderPipelined(FileBufferRenderContext context,
+      Scene scene) throws IOException {
+    try {
+      jobWindow.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for a free job slot", e);
+    }
+
+    AtomicReference<RenderJob> job = new AtomicReference<>();
+    CompletableFuture<BufferedImage> result;
+    try {
+      StageTimer upload = context.startStage(Stage.UPLOAD);
+      result = createJob(context, scene)
+          .thenCompose(createdJob -> {
+            job.set(createdJob);
+            upload.stop();
+            StageTimer remoteWait = context.startStage(Stage.REMOTE_WAIT);
+            return api.waitForCompletion(createdJob, 10, TimeUnit.MINUTES)
+                .thenApply(completedJob -> {
+                  remoteWait.stop();
+                  context.setSamplesPerPixel(completedJob.getSpp());
+                  return completedJob;
+                });
+          })
+          .thenApplyAsync(completedJob -> {
+            StageTimer download = context.startStage(Stage.DOWNLOAD);
+            try {
+              BufferedImage image = api.getPicture(completedJob.getId());
+              download.stop();
+              return image;
+            } catch (IOException e) {
+              throw new CompletionException(e);
+            }
+          }, downloadExecutor);
+    } catch (IOException | RuntimeException e) {
+      jobWindow.release();
+      throw e;
+    }
+    return result.whenComplete((image, e) -> {
+      jobWindow.release();
+      if (e != null && job.get() != null) {
+        api.cancelJob(job.get().getId());
+      }
+    });
+  }
+
+  private CompletableFuture<RenderJob> createJob(FileBufferRenderContext context, Scene scene)
+      throws IOException {
+    if (initializeLocally) {
+      return api.createJob(context.getScene(), context.getOctree(), null, null,
+          this.texturepack, samplesPerPixel, new TaskTracker(ProgressListener.NONE));
+    } else {
+      return api.createJob(context.getScene(), scene.getChunks().stream().map(
+          ChunkPosition::getRegionPosition).collect(Collectors.toSet()).stream()
+              .map(position -> getRegionFile(scene, position))
+              .filter(File::exists)
+              .collect(Collectors.toList()), null, null,
+          this.texturepack, samplesPerPixel, new TaskTracker(ProgressListener.NONE));
+    }
+  }
+
   private File getRegionFile(Scene scene, RegionPosition position) {
     try {
       Field worldPath = Scene.class.getDeclaredField("worldPath");
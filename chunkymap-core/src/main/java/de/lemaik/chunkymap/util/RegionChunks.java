@@ -0,0 +1,113 @@
+package de.lemaik.chunkymap.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import okio.ByteString;
+
+/**
+ * Reads the raw, still compressed chunk data of region (.mca) files. Chunks are identified by their
+ * index in the region, i.e. <code>(x &amp; 31) + (z &amp; 31) * 32</code>.
+ */
+public class RegionChunks {
+
+  private static final int CHUNKS = 1024;
+
+  private RegionChunks() {
+  }
+
+  /**
+   * Compute the MD5 hash of the data of every chunk in the given region file.
+   *
+   * @param regionFile region file
+   * @return hex encoded MD5 hash of every chunk that exists, by chunk index
+   */
+  public static Map<Integer, String> hashChunks(File regionFile) throws IOException {
+    RegionHeader header = RegionHeader.read(regionFile);
+    Map<Integer, String> hashes = new HashMap<>();
+    try (RandomAccessFile file = new RandomAccessFile(regionFile, "r")) {
+      MessageDigest md5 = MessageDigest.getInstance("MD5");
+      for (int index = 0; index < CHUNKS; index++) {
+        byte[] data = readChunk(file, header, index);
+        if (data != null) {
+          hashes.put(index, ByteString.of(md5.digest(data)).hex());
+        }
+      }
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 is not supported", e);
+    }
+    return hashes;
+  }
+
+  /**
+   * Write a region file that only contains the given chunks of another region file. The chunks
+   * keep their timestamps, all other chunks are missing.
+   *
+   * @param regionFile region file to copy the chunks from
+   * @param chunks     indices of the chunks to copy
+   * @param target     file to write the sparse region file to
+   */
+  public static void writeSparseRegion(File regionFile, Collection<Integer> chunks, File target)
+      throws IOException {
+    RegionHeader header = RegionHeader.read(regionFile);
+    int[] locations = new int[CHUNKS];
+    int[] timestamps = new int[CHUNKS];
+    try (RandomAccessFile in = new RandomAccessFile(regionFile, "r");
+        RandomAccessFile out = new RandomAccessFile(target, "rw")) {
+      out.setLength(0);
+      int sector = 2;
+      for (int index : chunks) {
+        int x = index & 31;
+        int z = index >> 5;
+        if (index < 0 || index >= CHUNKS || !header.hasChunk(x, z)) {
+          continue;
+        }
+        int sectorCount = header.getSectorCount(x, z);
+        byte[] sectors = new byte[sectorCount * RegionHeader.SECTOR_SIZE];
+        in.seek((long) header.getSectorOffset(x, z) * RegionHeader.SECTOR_SIZE);
+        in.readFully(sectors);
+        out.seek((long) sector * RegionHeader.SECTOR_SIZE);
+        out.write(sectors);
+        locations[index] = (sector << 8) | sectorCount;
+        timestamps[index] = header.getTimestamp(x, z);
+        sector += sectorCount;
+      }
+      out.seek(0);
+      for (int location : locations) {
+        out.writeInt(location);
+      }
+      for (int timestamp : timestamps) {
+        out.writeInt(timestamp);
+      }
+    }
+  }
+
+  /**
+   * @return the length prefixed data of the given chunk, or null if the chunk doesn't exist
+   */
+  private static byte[] readChunk(RandomAccessFile file, RegionHeader header, int index)
+      throws IOException {
+    int x = index & 31;
+    int z = index >> 5;
+    if (!header.hasChunk(x, z)) {
+      return null;
+    }
+    long offset = (long) header.getSectorOffset(x, z) * RegionHeader.SECTOR_SIZE;
+    int maxLength = header.getSectorCount(x, z) * RegionHeader.SECTOR_SIZE;
+    if (offset + 4 > file.length()) {
+      return null;
+    }
+    file.seek(offset);
+    int length = (int) Math.min(Math.max(0, file.readInt()) + 4L,
+        Math.min(maxLength, file.length() - offset));
+    byte[] data = new byte[length];
+    file.seek(offset);
+    file.readFully(data);
+    return data;
+  }
+}
@@ -0,0 +1,116 @@
+package de.lemaik.chunkymap.util;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import se.llbit.chunky.world.ChunkPosition;
+import se.llbit.chunky.world.RegionPosition;
+
+/**
+ * The header of a Minecraft region (.mca) file, i.e. the location table and the per-chunk
+ * modification timestamps. Reading the header is cheap compared to reading the chunks, so it is
+ * used to find out which chunks changed.
+ */
+public class RegionHeader {
+
+  public static final int SECTOR_SIZE = 4096;
+  private static final int CHUNKS = 1024;
+  private static final RegionHeader EMPTY = new RegionHeader(new int[CHUNKS], new int[CHUNKS]);
+
+  private final int[] locations;
+  private final int[] timestamps;
+
+  private RegionHeader(int[] locations, int[] timestamps) {
+    this.locations = locations;
+    this.timestamps = timestamps;
+  }
+
+  /**
+   * Read the header of the given region file. A missing or truncated region file is treated like
+   * a region without any chunks.
+   *
+   * @param regionFile region file
+   * @return the header of the region file
+   */
+  public static RegionHeader read(File regionFile) throws IOException {
+    if (!regionFile.isFile() || regionFile.length() < 2 * SECTOR_SIZE) {
+      return EMPTY;
+    }
+    // read the whole header at once, reading it int by int would take a read call per int
+    byte[] data = new byte[2 * SECTOR_SIZE];
+    try (DataInputStream in = new DataInputStream(new FileInputStream(regionFile))) {
+      in.readFully(data);
+    } catch (EOFException e) {
+      return EMPTY;
+    }
+    IntBuffer header = ByteBuffer.wrap(data).asIntBuffer();
+    int[] locations = new int[CHUNKS];
+    int[] timestamps = new int[CHUNKS];
+    header.get(locations);
+    header.get(timestamps);
+    return new RegionHeader(locations, timestamps);
+  }
+
+  /**
+   * Read the timestamps of the given chunks, reading every region header only once.
+   *
+   * @param regionFolder region folder of the dimension
+   * @param chunks       chunks
+   * @return timestamp of every chunk, 0 for chunks that don't exist
+   */
+  public static Map<ChunkPosition, Integer> readTimestamps(File regionFolder,
+      Collection<ChunkPosition> chunks) throws IOException {
+    Map<RegionPosition, RegionHeader> headers = new HashMap<>();
+    Map<ChunkPosition, Integer> timestamps = new HashMap<>(chunks.size() * 2);
+    for (ChunkPosition chunk : chunks) {
+      RegionPosition region = chunk.getRegionPosition();
+      RegionHeader header = headers.get(region);
+      if (header == null) {
+        header = read(new File(regionFolder, region.getMcaName()));
+        headers.put(region, header);
+      }
+      timestamps.put(chunk, header.getTimestamp(chunk.x, chunk.z));
+    }
+    return timestamps;
+  }
+
+  /**
+   * @return the modification timestamp (in seconds) of the given chunk or 0 if the chunk doesn't
+   * exist
+   */
+  public int getTimestamp(int chunkX, int chunkZ) {
+    return timestamps[index(chunkX, chunkZ)];
+  }
+
+  /**
+   * @return true if the region contains the given chunk
+   */
+  public boolean hasChunk(int chunkX, int chunkZ) {
+    return locations[index(chunkX, chunkZ)] != 0;
+  }
+
+  /**
+   * @return offset of the first sector of the given chunk, in sectors
+   */
+  public int getSectorOffset(int chunkX, int chunkZ) {
+    return locations[index(chunkX, chunkZ)] >>> 8;
+  }
+
+  /**
+   * @return number of sectors of the given chunk
+   */
+  public int getSectorCount(int chunkX, int chunkZ) {
+    return locations[index(chunkX, chunkZ)] & 0xFF;
+  }
+
+  private static int index(int chunkX, int chunkZ) {
+    return (chunkX & 31) + (chunkZ & 31) * 32;
+  }
+}
@@ -0,0 +1,105 @@
+package de.lemaik.chunkymap.dynmap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.llbit.chunky.world.ChunkPosition;
+
+class TileFingerprintIndexTest {
+
+  @TempDir
+  File folder;
+
+  @Test
+  void matchesOnlyThePutFingerprint() {
+    TileFingerprintIndex index = new TileFingerprintIndex(new File(folder, "fingerprints.bin"));
+    try {
+      assertFalse(index.matches(1, 2, 42));
+      index.put(1, 2, 42);
+      assertTrue(index.matches(1, 2, 42));
+      assertFalse(index.matches(1, 2, 43));
+      assertFalse(index.matches(2, 1, 42));
+    } finally {
+      index.close();
+    }
+  }
+
+  @Test
+  void keepsFingerprintsWhenReopened() {
+    File file = new File(folder, "maps/fingerprints.bin");
+    TileFingerprintIndex index = new TileFingerprintIndex(file);
+    index.put(1, 2, 42);
+    index.put(-3, -4, Long.MIN_VALUE);
+    index.put(1, 2, 43);
+    index.close();
+    assertTrue(file.isFile());
+
+    TileFingerprintIndex reopened = new TileFingerprintIndex(file);
+    try {
+      assertTrue(reopened.matches(1, 2, 43));
+      assertFalse(reopened.matches(1, 2, 42));
+      assertTrue(reopened.matches(-3, -4, Long.MIN_VALUE));
+    } finally {
+      reopened.close();
+    }
+  }
+
+  @Test
+  void startsEmptyIfTheFileIsCorrupt() throws IOException {
+    File file = new File(folder, "fingerprints.bin");
+    Files.write(file.toPath(), new byte[]{0, 0, 0, 2, 1, 2, 3});
+
+    TileFingerprintIndex index = new TileFingerprintIndex(file);
+    try {
+      assertFalse(index.matches(0, 0, 0));
+    } finally {
+      index.close();
+    }
+  }
+
+  @Test
+  void fingerprintDoesNotDependOnChunkOrder() {
+    Map<ChunkPosition, Integer> timestamps = new LinkedHashMap<>();
+    timestamps.put(ChunkPosition.get(0, 0), 100);
+    timestamps.put(ChunkPosition.get(1, 0), 200);
+    timestamps.put(ChunkPosition.get(0, 1), 300);
+    Map<ChunkPosition, Integer> reversed = new LinkedHashMap<>();
+    reversed.put(ChunkPosition.get(0, 1), 300);
+    reversed.put(ChunkPosition.get(1, 0), 200);
+    reversed.put(ChunkPosition.get(0, 0), 100);
+
+    long mapFingerprint = TileFingerprintIndex.hash("map");
+    assertEquals(TileFingerprintIndex.getFingerprint(mapFingerprint, 1, 2, 0, timestamps),
+        TileFingerprintIndex.getFingerprint(mapFingerprint, 1, 2, 0, reversed));
+  }
+
+  @Test
+  void fingerprintChangesWithItsInputs() {
+    Map<ChunkPosition, Integer> timestamps = new HashMap<>();
+    timestamps.put(ChunkPosition.get(0, 0), 100);
+    Map<ChunkPosition, Integer> modified = new HashMap<>();
+    modified.put(ChunkPosition.get(0, 0), 101);
+
+    long mapFingerprint = TileFingerprintIndex.hash("map");
+    long fingerprint = TileFingerprintIndex.getFingerprint(mapFingerprint, 1, 2, 0, timestamps);
+    assertNotEquals(fingerprint,
+        TileFingerprintIndex.getFingerprint(mapFingerprint, 1, 2, 0, modified));
+    assertNotEquals(fingerprint,
+        TileFingerprintIndex.getFingerprint(TileFingerprintIndex.hash("other map"), 1, 2, 0,
+            timestamps));
+    assertNotEquals(fingerprint,
+        TileFingerprintIndex.getFingerprint(mapFingerprint, 2, 1, 0, timestamps));
+    assertNotEquals(fingerprint,
+        TileFingerprintIndex.getFingerprint(mapFingerprint, 1, 2, 1, timestamps));
+  }
+}
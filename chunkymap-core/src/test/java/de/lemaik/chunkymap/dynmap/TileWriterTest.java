@@ -0,0 +1,94 @@
+package de.lemaik.chunkymap.dynmap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class TileWriterTest {
+
+  @Test
+  void writesTilesOnWriterThreads() throws Exception {
+    TileWriter writer = new TileWriter(1, 4);
+    Thread thread = writer.submit(Thread::currentThread).get(10, TimeUnit.SECONDS);
+    assertNotSame(Thread.currentThread(), thread);
+  }
+
+  @Test
+  void writesTilesOnTheCallingThreadIfTheQueueIsFull() throws Exception {
+    TileWriter writer = new TileWriter(1, 1);
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch blocked = new CountDownLatch(1);
+    CompletableFuture<Thread> running = writer.submit(() -> {
+      writing.countDown();
+      await(blocked);
+      return Thread.currentThread();
+    });
+    writing.await(10, TimeUnit.SECONDS);
+    CompletableFuture<Thread> queued = writer.submit(Thread::currentThread);
+
+    CompletableFuture<Thread> overflow = writer.submit(Thread::currentThread);
+    assertSame(Thread.currentThread(), overflow.get(10, TimeUnit.SECONDS));
+
+    blocked.countDown();
+    assertEquals(running.get(10, TimeUnit.SECONDS), queued.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void passesFailuresToTheFuture() {
+    TileWriter writer = new TileWriter(1, 4);
+    CompletableFuture<Object> result = writer.submit(() -> {
+      throw new IllegalStateException("write failed");
+    });
+    ExecutionException e = assertThrows(ExecutionException.class,
+        () -> result.get(10, TimeUnit.SECONDS));
+    assertEquals(IllegalStateException.class, e.getCause().getClass());
+  }
+
+  @Test
+  void writesQueuedTilesOnShutdown() {
+    TileWriter writer = new TileWriter(1, 4);
+    CompletableFuture<Boolean> running = writer.submit(() -> {
+      sleep(100);
+      return true;
+    });
+    CompletableFuture<Boolean> queued = writer.submit(() -> true);
+
+    writer.shutdown();
+    assertTrue(running.isDone());
+    assertTrue(queued.isDone());
+  }
+
+  @Test
+  void writesTilesSubmittedAfterShutdownOnTheCallingThread() throws Exception {
+    TileWriter writer = new TileWriter(1, 4);
+    writer.shutdown();
+
+    CompletableFuture<Thread> result = writer.submit(Thread::currentThread);
+    assertTrue(result.isDone());
+    assertSame(Thread.currentThread(), result.get());
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
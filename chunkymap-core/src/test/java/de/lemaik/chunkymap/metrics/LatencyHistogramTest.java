@@ -0,0 +1,67 @@
+package de.lemaik.chunkymap.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+  @Test
+  void countsDurationsInTheirBuckets() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(0);
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(1) + 1);
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(7));
+    histogram.record(TimeUnit.MINUTES.toNanos(11));
+
+    long[] counts = histogram.getBucketCounts();
+    assertEquals(LatencyHistogram.BUCKET_BOUNDS_MS.length + 1, counts.length);
+    assertEquals(2, counts[0]);
+    assertEquals(1, counts[1]);
+    assertEquals(1, counts[3]);
+    assertEquals(1, counts[counts.length - 1]);
+    assertEquals(5, histogram.getCount());
+    assertEquals(TimeUnit.MINUTES.toNanos(11), histogram.getMaxNanos());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(9) + 1 + TimeUnit.MINUTES.toNanos(11),
+        histogram.getSumNanos());
+  }
+
+  @Test
+  void estimatesQuantilesByBucketBounds() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 90; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(20));
+    }
+    for (int i = 0; i < 10; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(400));
+    }
+
+    assertEquals(25, histogram.getQuantileMillis(0.5));
+    assertEquals(25, histogram.getQuantileMillis(0.9));
+    // the maximum is lower than the upper bound of its bucket
+    assertEquals(400, histogram.getQuantileMillis(0.95));
+    assertEquals(400, histogram.getQuantileMillis(1));
+  }
+
+  @Test
+  void estimatesQuantilesOfOverflowingDurationsByTheMaximum() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(TimeUnit.MINUTES.toNanos(20));
+    assertEquals(TimeUnit.MINUTES.toMillis(20), histogram.getQuantileMillis(0.5));
+  }
+
+  @Test
+  void isEmptyAfterReset() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getQuantileMillis(0.5));
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+    histogram.reset();
+
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getSumNanos());
+    assertEquals(0, histogram.getMaxNanos());
+    assertEquals(0, histogram.getQuantileMillis(0.5));
+  }
+}
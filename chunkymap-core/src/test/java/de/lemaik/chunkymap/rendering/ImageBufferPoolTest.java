@@ -0,0 +1,65 @@
+package de.lemaik.chunkymap.rendering;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.awt.image.BufferedImage;
+import org.junit.jupiter.api.Test;
+
+class ImageBufferPoolTest {
+
+  @Test
+  void createsImagesOfTheRequestedSize() {
+    ImageBufferPool pool = new ImageBufferPool(2);
+    BufferedImage image = pool.acquire(128, 64);
+    assertEquals(128, image.getWidth());
+    assertEquals(64, image.getHeight());
+    assertEquals(BufferedImage.TYPE_INT_ARGB, image.getType());
+  }
+
+  @Test
+  void reusesReleasedImagesOfTheSameSize() {
+    ImageBufferPool pool = new ImageBufferPool(2);
+    BufferedImage image = pool.acquire(128, 128);
+    pool.release(image);
+    assertSame(image, pool.acquire(128, 128));
+    assertNotSame(image, pool.acquire(128, 128));
+  }
+
+  @Test
+  void keysImagesBySize() {
+    ImageBufferPool pool = new ImageBufferPool(2);
+    BufferedImage image = pool.acquire(128, 64);
+    pool.release(image);
+    assertNotSame(image, pool.acquire(64, 128));
+    assertSame(image, pool.acquire(128, 64));
+  }
+
+  @Test
+  void keepsAtMostTheMaximumNumberOfIdleImages() {
+    ImageBufferPool pool = new ImageBufferPool(2);
+    BufferedImage first = pool.acquire(16, 16);
+    BufferedImage second = pool.acquire(16, 16);
+    BufferedImage third = pool.acquire(16, 16);
+    pool.release(first);
+    pool.release(second);
+    pool.release(third);
+
+    assertSame(second, pool.acquire(16, 16));
+    assertSame(first, pool.acquire(16, 16));
+    BufferedImage created = pool.acquire(16, 16);
+    assertNotSame(first, created);
+    assertNotSame(second, created);
+    assertNotSame(third, created);
+  }
+
+  @Test
+  void dropsImagesOfOtherTypes() {
+    ImageBufferPool pool = new ImageBufferPool(2);
+    BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+    pool.release(image);
+    pool.release(null);
+    assertEquals(BufferedImage.TYPE_INT_ARGB, pool.acquire(16, 16).getType());
+  }
+}
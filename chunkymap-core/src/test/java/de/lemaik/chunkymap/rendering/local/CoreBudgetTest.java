@@ -0,0 +1,69 @@
+package de.lemaik.chunkymap.rendering.local;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class CoreBudgetTest {
+
+    @Test
+    void limitsTilesToTheirConfiguredThreads() throws InterruptedException {
+        CoreBudget budget = new CoreBudget();
+        budget.setTotalThreads(8);
+        assertEquals(2, budget.acquire(2));
+    }
+
+    @Test
+    void givesTilesTheirFairShare() throws InterruptedException {
+        CoreBudget budget = new CoreBudget();
+        budget.setTotalThreads(12);
+        assertEquals(4, budget.acquire(4));
+        // one tile is rendering, so the next one gets half of the budget
+        assertEquals(6, budget.acquire(8));
+        // and the last one gets the remaining threads
+        assertEquals(2, budget.acquire(8));
+    }
+
+    @Test
+    void waitsUntilThreadsAreReleased() throws InterruptedException {
+        CoreBudget budget = new CoreBudget();
+        budget.setTotalThreads(4);
+        assertEquals(4, budget.acquire(4));
+
+        AtomicInteger acquired = new AtomicInteger();
+        Thread other = new Thread(() -> {
+            try {
+                acquired.set(budget.acquire(4));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        other.setDaemon(true);
+        other.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (other.getState() != Thread.State.WAITING) {
+            assertTrue(System.nanoTime() < deadline, "thread is not waiting");
+            Thread.sleep(1);
+        }
+        assertEquals(0, acquired.get());
+
+        budget.release(4);
+        other.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(other.isAlive());
+        assertEquals(4, acquired.get());
+    }
+
+    @Test
+    void usesTheLargestConfiguredBudget() throws InterruptedException {
+        CoreBudget budget = new CoreBudget();
+        budget.setTotalThreads(2);
+        budget.setTotalThreads(6);
+        budget.setTotalThreads(4);
+        budget.setTotalThreads(0);
+        assertEquals(6, budget.acquire(16));
+    }
+}
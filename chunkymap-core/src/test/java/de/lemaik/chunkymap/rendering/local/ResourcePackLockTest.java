@@ -0,0 +1,102 @@
+package de.lemaik.chunkymap.rendering.local;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class ResourcePackLockTest {
+
+    private static final List<File> PACKS_A = Collections.singletonList(new File("a.zip"));
+    private static final List<File> PACKS_B = Collections.singletonList(new File("b.zip"));
+
+    private final List<List<File>> loaded = new CopyOnWriteArrayList<>();
+    private final ResourcePackLock lock = new ResourcePackLock(loaded::add);
+
+    @Test
+    void loadsResourcePacksOnlyWhenTheyChange() throws InterruptedException {
+        lock.acquire(PACKS_A);
+        lock.acquire(PACKS_A);
+        lock.release();
+        lock.release();
+        lock.acquire(PACKS_A);
+        lock.release();
+        assertEquals(Collections.singletonList(PACKS_A), loaded);
+
+        lock.acquire(PACKS_B);
+        lock.release();
+        assertEquals(Arrays.asList(PACKS_A, PACKS_B), loaded);
+    }
+
+    @Test
+    void waitsForRunningTilesBeforeSwappingResourcePacks() throws InterruptedException {
+        lock.acquire(PACKS_A);
+        Thread other = acquireInBackground(PACKS_B);
+        awaitWaiting(other);
+        assertEquals(Collections.singletonList(PACKS_A), loaded);
+
+        lock.release();
+        other.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(other.isAlive());
+        assertEquals(Arrays.asList(PACKS_A, PACKS_B), loaded);
+    }
+
+    @Test
+    void swapsResourcePacksAfterABatchIfOtherTilesAreWaiting() throws InterruptedException {
+        lock.acquire(PACKS_A);
+        Thread tileB = acquireInBackground(PACKS_B);
+        awaitWaiting(tileB);
+
+        // tiles with the loaded resource packs may continue until the batch is full
+        for (int i = 1; i < 32; i++) {
+            lock.acquire(PACKS_A);
+        }
+        Thread tileA = acquireInBackground(PACKS_A);
+        awaitWaiting(tileA);
+
+        for (int i = 0; i < 32; i++) {
+            lock.release();
+        }
+        tileB.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(tileB.isAlive());
+        assertEquals(Arrays.asList(PACKS_A, PACKS_B), loaded);
+        assertTrue(tileA.isAlive());
+
+        // the background thread of tile B still holds the resource packs
+        lock.release();
+        tileA.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(tileA.isAlive());
+        assertEquals(Arrays.asList(PACKS_A, PACKS_B, PACKS_A), loaded);
+    }
+
+    /**
+     * Acquire the given resource packs on a new thread, without releasing them.
+     */
+    private Thread acquireInBackground(List<File> resourcepacks) {
+        Thread thread = new Thread(() -> {
+            try {
+                lock.acquire(resourcepacks);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (thread.getState() != Thread.State.WAITING) {
+            assertTrue(System.nanoTime() < deadline, "thread is not waiting");
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package de.lemaik.chunkymap.rendering.rs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class ApiClientTest {
+
+  @Test
+  void pollsWhenTheJobIsExpectedToBeHalfwayDone() {
+    // 100 SPP per second and 1000 SPP to go, so the job is halfway done in 5 seconds
+    assertEquals(5000, ApiClient.getNextPollInterval(0, 100, 1100, 1000, 500));
+  }
+
+  @Test
+  void limitsTheIntervalOfJobsThatAreAlmostDone() {
+    assertEquals(ApiClient.MIN_POLL_INTERVAL,
+        ApiClient.getNextPollInterval(0, 990, 1000, 1000, 500));
+    assertEquals(ApiClient.MIN_POLL_INTERVAL, ApiClient.getNextPollInterval(0, 1, 2, 0, 500));
+  }
+
+  @Test
+  void limitsTheIntervalOfSlowJobs() {
+    assertEquals(ApiClient.MAX_POLL_INTERVAL, ApiClient.getNextPollInterval(0, 1, 1000, 1000, 500));
+  }
+
+  @Test
+  void backsOffIfTheJobMadeNoProgress() {
+    assertEquals(1000, ApiClient.getNextPollInterval(10, 10, 1000, 500, 500));
+    assertEquals(ApiClient.MAX_POLL_INTERVAL,
+        ApiClient.getNextPollInterval(10, 10, 1000, 8000, 8000));
+  }
+}
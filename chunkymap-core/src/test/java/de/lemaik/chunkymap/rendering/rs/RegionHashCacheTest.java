@@ -0,0 +1,194 @@
+package de.lemaik.chunkymap.rendering.rs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import de.lemaik.chunkymap.util.RegionHeader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import okio.ByteString;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RegionHashCacheTest {
+
+  private static final long LAST_MODIFIED = 1_600_000_000_000L;
+
+  @TempDir
+  File folder;
+
+  @Test
+  void computesHashesOfTheFileAndItsChunks() throws IOException {
+    File region = writeRegion("r.0.0.mca", 1, LAST_MODIFIED);
+    RegionHashCache cache = new RegionHashCache(new File(folder, "hashes.json"));
+    try {
+      assertEquals(md5(Files.readAllBytes(region.toPath())), cache.getMd5(region));
+      byte[] chunk = Arrays.copyOfRange(Files.readAllBytes(region.toPath()),
+          2 * RegionHeader.SECTOR_SIZE, 2 * RegionHeader.SECTOR_SIZE + 104);
+      assertEquals(Collections.singletonMap(0, md5(chunk)), cache.getChunkMd5s(region));
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  void keepsHashesWhileSizeAndModificationTimeAreUnchanged() throws IOException {
+    File region = writeRegion("r.0.0.mca", 1, LAST_MODIFIED);
+    RegionHashCache cache = new RegionHashCache(new File(folder, "hashes.json"));
+    try {
+      String md5 = cache.getMd5(region);
+      Map<Integer, String> chunks = cache.getChunkMd5s(region);
+
+      writeRegion("r.0.0.mca", 2, LAST_MODIFIED);
+      assertEquals(md5, cache.getMd5(region));
+      assertEquals(chunks, cache.getChunkMd5s(region));
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  void computesHashesAgainIfTheFileWasModified() throws IOException {
+    File region = writeRegion("r.0.0.mca", 1, LAST_MODIFIED);
+    RegionHashCache cache = new RegionHashCache(new File(folder, "hashes.json"));
+    try {
+      String md5 = cache.getMd5(region);
+      Map<Integer, String> chunks = cache.getChunkMd5s(region);
+
+      writeRegion("r.0.0.mca", 2, LAST_MODIFIED + 1000);
+      assertNotEquals(md5, cache.getMd5(region));
+      assertEquals(md5(Files.readAllBytes(region.toPath())), cache.getMd5(region));
+      assertNotEquals(chunks, cache.getChunkMd5s(region));
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  void computesHashesAgainIfTheSizeChanged() throws IOException {
+    File region = writeRegion("r.0.0.mca", 1, LAST_MODIFIED);
+    RegionHashCache cache = new RegionHashCache(new File(folder, "hashes.json"));
+    try {
+      String md5 = cache.getMd5(region);
+
+      Files.write(region.toPath(), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+      assertTrue(region.setLastModified(LAST_MODIFIED));
+      assertNotEquals(md5, cache.getMd5(region));
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  void keysHashesByPath() throws IOException {
+    File region = writeRegion("r.0.0.mca", 1, LAST_MODIFIED);
+    File otherRegion = writeRegion("r.1.0.mca", 2, LAST_MODIFIED);
+    RegionHashCache cache = new RegionHashCache(new File(folder, "hashes.json"));
+    try {
+      String md5 = cache.getMd5(region);
+      String otherMd5 = cache.getMd5(otherRegion);
+      assertNotEquals(md5, otherMd5);
+      assertEquals(md5, cache.getMd5(region));
+      assertEquals(otherMd5, cache.getMd5(otherRegion));
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  void keepsHashesWhenReopened() throws IOException {
+    File file = new File(folder, "cache/hashes.json");
+    File region = writeRegion("r.0.0.mca", 1, LAST_MODIFIED);
+    RegionHashCache cache = new RegionHashCache(file);
+    String md5 = cache.getMd5(region);
+    Map<Integer, String> chunks = cache.getChunkMd5s(region);
+    cache.close();
+    assertTrue(file.isFile());
+
+    // the modified file has the same size and modification time, so the saved hashes are used
+    writeRegion("r.0.0.mca", 2, LAST_MODIFIED);
+    RegionHashCache reopened = new RegionHashCache(file);
+    try {
+      assertEquals(md5, reopened.getMd5(region));
+      assertEquals(chunks, reopened.getChunkMd5s(region));
+    } finally {
+      reopened.close();
+    }
+  }
+
+  @Test
+  void dropsTheLeastRecentlyUsedHashes() throws IOException {
+    File first = writeRegion("r.0.0.mca", 1, LAST_MODIFIED);
+    File second = writeRegion("r.1.0.mca", 2, LAST_MODIFIED);
+    File third = writeRegion("r.2.0.mca", 3, LAST_MODIFIED);
+    RegionHashCache cache = new RegionHashCache(new File(folder, "hashes.json"), 2);
+    try {
+      String firstMd5 = cache.getMd5(first);
+      String secondMd5 = cache.getMd5(second);
+      cache.getMd5(first);
+      cache.getMd5(third);
+
+      // same size and modification time, so only hashes that are still cached are kept
+      writeRegion("r.0.0.mca", 4, LAST_MODIFIED);
+      writeRegion("r.1.0.mca", 5, LAST_MODIFIED);
+      assertEquals(firstMd5, cache.getMd5(first));
+      assertNotEquals(secondMd5, cache.getMd5(second));
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  void dropsHashesOfDeletedRegionsWhenReopened() throws IOException {
+    File file = new File(folder, "hashes.json");
+    File region = writeRegion("r.0.0.mca", 1, LAST_MODIFIED);
+    File deletedRegion = writeRegion("r.1.0.mca", 2, LAST_MODIFIED);
+    RegionHashCache cache = new RegionHashCache(file);
+    cache.getMd5(region);
+    cache.getMd5(deletedRegion);
+    cache.close();
+    assertTrue(deletedRegion.delete());
+
+    new RegionHashCache(file).close();
+    String saved = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    assertTrue(saved.contains(region.getName()));
+    assertFalse(saved.contains(deletedRegion.getName()));
+  }
+
+  /**
+   * Write a region file that only contains the chunk at index 0, with 100 bytes of data that are
+   * set to the given value.
+   */
+  private File writeRegion(String name, int value, long lastModified) throws IOException {
+    ByteBuffer data = ByteBuffer.allocate(3 * RegionHeader.SECTOR_SIZE);
+    data.putInt(0, (2 << 8) | 1);
+    data.putInt(RegionHeader.SECTOR_SIZE, 1234);
+    data.putInt(2 * RegionHeader.SECTOR_SIZE, 100);
+    for (int i = 0; i < 100; i++) {
+      data.put(2 * RegionHeader.SECTOR_SIZE + 4 + i, (byte) value);
+    }
+    File region = new File(folder, name);
+    Files.write(region.toPath(), data.array());
+    assertTrue(region.setLastModified(lastModified));
+    return region;
+  }
+
+  private static String md5(byte[] data) {
+    try {
+      return ByteString.of(MessageDigest.getInstance("MD5").digest(data)).hex();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 is not supported", e);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package de.lemaik.chunkymap.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RegionChunksTest {
+
+  @TempDir
+  File folder;
+
+  @Test
+  void hashesTheDataOfEveryChunk() throws IOException {
+    File region = writeRegion(new File(folder, "r.0.0.mca"), 0, 5, 33);
+
+    Map<Integer, String> hashes = RegionChunks.hashChunks(region);
+    assertEquals(new HashSet<>(Arrays.asList(0, 5, 33)), hashes.keySet());
+    assertEquals(3, new HashSet<>(hashes.values()).size());
+  }
+
+  @Test
+  void hashesOnlyTheLengthPrefixedData() throws IOException {
+    File region = writeRegion(new File(folder, "r.0.0.mca"), 0);
+    File padded = writeRegion(new File(folder, "r.1.0.mca"), 0);
+    // garbage after the chunk data in the same sector doesn't change the hash
+    byte[] data = Files.readAllBytes(padded.toPath());
+    data[3 * RegionHeader.SECTOR_SIZE - 1] = 42;
+    Files.write(padded.toPath(), data);
+
+    assertEquals(RegionChunks.hashChunks(region), RegionChunks.hashChunks(padded));
+  }
+
+  @Test
+  void writesOnlyTheGivenChunks() throws IOException {
+    File region = writeRegion(new File(folder, "r.0.0.mca"), 0, 5, 33);
+    File sparse = new File(folder, "sparse.mca");
+
+    RegionChunks.writeSparseRegion(region, Arrays.asList(33, 0, 7, -1, 1024), sparse);
+
+    RegionHeader header = RegionHeader.read(sparse);
+    assertTrue(header.hasChunk(0, 0));
+    assertTrue(header.hasChunk(1, 1));
+    assertFalse(header.hasChunk(5, 0));
+    assertFalse(header.hasChunk(7, 0));
+    assertEquals(1000 + 33, header.getTimestamp(1, 1));
+    assertEquals(1000, header.getTimestamp(0, 0));
+    // the chunks are written next to each other, in the given order
+    assertEquals(2, header.getSectorOffset(1, 1));
+    assertEquals(3, header.getSectorOffset(0, 0));
+    assertEquals(4 * RegionHeader.SECTOR_SIZE, sparse.length());
+
+    Map<Integer, String> hashes = RegionChunks.hashChunks(region);
+    Map<Integer, String> sparseHashes = RegionChunks.hashChunks(sparse);
+    assertEquals(new HashSet<>(Arrays.asList(0, 33)), sparseHashes.keySet());
+    assertEquals(hashes.get(0), sparseHashes.get(0));
+    assertEquals(hashes.get(33), sparseHashes.get(33));
+  }
+
+  @Test
+  void replacesAnExistingTarget() throws IOException {
+    File region = writeRegion(new File(folder, "r.0.0.mca"), 0, 5, 33);
+    File sparse = writeRegion(new File(folder, "sparse.mca"), 1, 2, 3, 4);
+
+    RegionChunks.writeSparseRegion(region, Arrays.asList(5), sparse);
+
+    assertEquals(3 * RegionHeader.SECTOR_SIZE, sparse.length());
+    assertEquals(new HashSet<>(Arrays.asList(5)), RegionChunks.hashChunks(sparse).keySet());
+  }
+
+  /**
+   * Write a region file with the given chunks, one sector each. The data of every chunk depends on
+   * its index and its timestamp is 1000 plus its index.
+   */
+  private static File writeRegion(File file, int... chunks) throws IOException {
+    ByteBuffer data = ByteBuffer.allocate((2 + chunks.length) * RegionHeader.SECTOR_SIZE);
+    for (int i = 0; i < chunks.length; i++) {
+      int index = chunks[i];
+      int sector = 2 + i;
+      data.putInt(index * 4, (sector << 8) | 1);
+      data.putInt(RegionHeader.SECTOR_SIZE + index * 4, 1000 + index);
+      data.putInt(sector * RegionHeader.SECTOR_SIZE, 100);
+      for (int j = 0; j < 100; j++) {
+        data.put(sector * RegionHeader.SECTOR_SIZE + 4 + j, (byte) (index + j));
+      }
+    }
+    Files.write(file.toPath(), data.array());
+    return file;
+  }
+}
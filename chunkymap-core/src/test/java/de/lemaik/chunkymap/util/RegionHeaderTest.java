@@ -0,0 +1,105 @@
+package de.lemaik.chunkymap.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.llbit.chunky.world.ChunkPosition;
+
+class RegionHeaderTest {
+
+  @TempDir
+  File folder;
+
+  @Test
+  void readsLocationsAndTimestamps() throws IOException {
+    int[] locations = new int[1024];
+    int[] timestamps = new int[1024];
+    locations[1 + 2 * 32] = (5 << 8) | 3;
+    timestamps[1 + 2 * 32] = 1234;
+    File regionFile = writeRegion("r.0.0.mca", locations, timestamps);
+
+    RegionHeader header = RegionHeader.read(regionFile);
+    assertTrue(header.hasChunk(1, 2));
+    assertEquals(5, header.getSectorOffset(1, 2));
+    assertEquals(3, header.getSectorCount(1, 2));
+    assertEquals(1234, header.getTimestamp(1, 2));
+    assertFalse(header.hasChunk(2, 1));
+    assertEquals(0, header.getTimestamp(2, 1));
+  }
+
+  @Test
+  void usesRegionRelativeCoordinates() throws IOException {
+    int[] locations = new int[1024];
+    int[] timestamps = new int[1024];
+    locations[31 + 31 * 32] = (2 << 8) | 1;
+    timestamps[31 + 31 * 32] = 42;
+    File regionFile = writeRegion("r.-1.-1.mca", locations, timestamps);
+
+    RegionHeader header = RegionHeader.read(regionFile);
+    assertTrue(header.hasChunk(-1, -1));
+    assertEquals(42, header.getTimestamp(-1, -1));
+    assertEquals(42, header.getTimestamp(31, 31));
+  }
+
+  @Test
+  void treatsMissingRegionAsEmpty() throws IOException {
+    RegionHeader header = RegionHeader.read(new File(folder, "r.0.0.mca"));
+    assertFalse(header.hasChunk(0, 0));
+    assertEquals(0, header.getTimestamp(0, 0));
+  }
+
+  @Test
+  void treatsTruncatedRegionAsEmpty() throws IOException {
+    File regionFile = new File(folder, "r.0.0.mca");
+    byte[] data = new byte[RegionHeader.SECTOR_SIZE + 100];
+    Arrays.fill(data, (byte) 1);
+    Files.write(regionFile.toPath(), data);
+
+    RegionHeader header = RegionHeader.read(regionFile);
+    assertFalse(header.hasChunk(0, 0));
+    assertEquals(0, header.getTimestamp(0, 0));
+  }
+
+  @Test
+  void readsTimestampsOfChunksInMultipleRegions() throws IOException {
+    int[] timestamps = new int[1024];
+    timestamps[3 + 4 * 32] = 100;
+    writeRegion("r.0.0.mca", new int[1024], timestamps);
+    timestamps = new int[1024];
+    timestamps[31] = 200;
+    writeRegion("r.-1.0.mca", new int[1024], timestamps);
+
+    ChunkPosition inFirstRegion = ChunkPosition.get(3, 4);
+    ChunkPosition inSecondRegion = ChunkPosition.get(-1, 0);
+    ChunkPosition inMissingRegion = ChunkPosition.get(0, 32);
+    Map<ChunkPosition, Integer> result = RegionHeader.readTimestamps(folder,
+        Arrays.asList(inFirstRegion, inSecondRegion, inMissingRegion));
+    assertEquals(3, result.size());
+    assertEquals(100, result.get(inFirstRegion));
+    assertEquals(200, result.get(inSecondRegion));
+    assertEquals(0, result.get(inMissingRegion));
+  }
+
+  private File writeRegion(String name, int[] locations, int[] timestamps) throws IOException {
+    File regionFile = new File(folder, name);
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(regionFile))) {
+      for (int location : locations) {
+        out.writeInt(location);
+      }
+      for (int timestamp : timestamps) {
+        out.writeInt(timestamp);
+      }
+    }
+    return regionFile;
+  }
+}
@@ -1,6 +1,12 @@
 package de.lemaik.chunkymap;
 
+import de.lemaik.chunkymap.dynmap.MapLifecycle;
+import de.lemaik.chunkymap.metrics.RenderMetrics;
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.llbit.log.Log;
@@ -32,5 +38,24 @@ public class ChunkyMapMod implements ModInitializer {
         } catch (IOException e) {
             LOGGER.warn("Could not write chunky map icon", e);
         }
+
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> MapLifecycle.disableAll());
+
+        CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) ->
+                dispatcher.register(Commands.literal("chunkymap")
+                        .requires(Commands.hasPermission(Commands.LEVEL_GAMEMASTERS))
+                        .then(Commands.literal("metrics")
+                                .executes(context -> {
+                                    RenderMetrics.INSTANCE.getReport().forEach(line -> context.getSource()
+                                            .sendSuccess(() -> Component.literal(line), false));
+                                    return 1;
+                                })
+                                .then(Commands.literal("reset")
+                                        .executes(context -> {
+                                            RenderMetrics.INSTANCE.reset();
+                                            context.getSource().sendSuccess(
+                                                    () -> Component.literal("Render metrics reset."), false);
+                                            return 1;
+                                        })))));
     }
 }
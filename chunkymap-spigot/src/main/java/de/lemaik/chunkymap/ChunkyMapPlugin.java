@@ -19,12 +19,16 @@
 
 package de.lemaik.chunkymap;
 
+import de.lemaik.chunkymap.dynmap.MapLifecycle;
+import de.lemaik.chunkymap.metrics.RenderMetrics;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.logging.Level;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
 import se.llbit.log.Log;
@@ -55,4 +59,23 @@ public class ChunkyMapPlugin extends JavaPlugin {
       getLogger().log(Level.WARNING, "Could not write chunky map icon", e);
     }
   }
+
+  @Override
+  public void onDisable() {
+    MapLifecycle.disableAll();
+  }
+
+  @Override
+  public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+    if (args.length == 1 && args[0].equalsIgnoreCase("metrics")) {
+      RenderMetrics.INSTANCE.getReport().forEach(sender::sendMessage);
+      return true;
+    } else if (args.length == 2 && args[0].equalsIgnoreCase("metrics")
+        && args[1].equalsIgnoreCase("reset")) {
+      RenderMetrics.INSTANCE.reset();
+      sender.sendMessage("Render metrics reset.");
+      return true;
+    }
+    return false;
+  }
 }